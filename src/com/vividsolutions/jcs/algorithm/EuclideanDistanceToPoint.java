@@ -39,12 +39,11 @@ import com.vividsolutions.jts.geom.*;
 /**
  * Computes the Euclidean distance (L2 metric) from a Point to a Geometry.
  * Also computes two points which are separated by the distance.
+ * <P>
+ * Keeps no state between calls, so it may be used from several threads at once.
  */
 public class EuclideanDistanceToPoint {
 
-  // used for point-line distance calculation
-  private static LineSegment tempSegment = new LineSegment();
-
   public EuclideanDistanceToPoint() {
   }
 
@@ -69,15 +68,63 @@ public class EuclideanDistanceToPoint {
   }
   public static void computeDistance(LineString line, Coordinate pt, PointPairDistance ptDist)
   {
-    Coordinate[] coords = line.getCoordinates();
-    for (int i = 0; i < coords.length - 1; i++) {
-      tempSegment.setCoordinates(coords[i], coords[i + 1]);
-      // this is somewhat inefficient - could do better
-      Coordinate closestPt = tempSegment.closestPoint(pt);
+    // Read the vertices straight from the sequence, so that sequences which
+    // don't hold Coordinates (e.g. DoubleBufferCoordinateSequence) needn't
+    // create them. ptDist copies the closest point, so it can be reused.
+    // Allocated per call so that concurrent callers don't share it.
+    CoordinateSequence seq = line.getCoordinateSequence();
+    Coordinate closestPt = new Coordinate();
+    for (int i = 0; i < seq.size() - 1; i++) {
+      closestPoint(seq.getX(i), seq.getY(i), seq.getX(i + 1), seq.getY(i + 1), pt, closestPt);
       ptDist.setMinimum(closestPt, pt);
     }
   }
 
+  /**
+   * Computes the point of the segment (x0 y0, x1 y1) closest to pt, exactly
+   * as LineSegment#closestPoint does.
+   *
+   * @param closestPt set to the closest point
+   */
+  static void closestPoint(double x0, double y0, double x1, double y1,
+      Coordinate pt, Coordinate closestPt)
+  {
+    double factor;
+    if (pt.x == x0 && pt.y == y0) {
+      factor = 0.0;
+    }
+    else if (pt.x == x1 && pt.y == y1) {
+      factor = 1.0;
+    }
+    else {
+      double dx = x1 - x0;
+      double dy = y1 - y0;
+      factor = ((pt.x - x0) * dx + (pt.y - y0) * dy) / (dx * dx + dy * dy);
+    }
+    if (factor > 0 && factor < 1) {
+      closestPt.x = x0 + factor * (x1 - x0);
+      closestPt.y = y0 + factor * (y1 - y0);
+      return;
+    }
+    double dist0 = distance(x0, y0, pt);
+    double dist1 = distance(x1, y1, pt);
+    if (dist0 < dist1) {
+      closestPt.x = x0;
+      closestPt.y = y0;
+    }
+    else {
+      closestPt.x = x1;
+      closestPt.y = y1;
+    }
+  }
+
+  private static double distance(double x, double y, Coordinate pt)
+  {
+    double dx = x - pt.x;
+    double dy = y - pt.y;
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
   public static void computeDistance(LineSegment segment, Coordinate pt, PointPairDistance ptDist)
   {
     Coordinate closestPt = segment.closestPoint(pt);
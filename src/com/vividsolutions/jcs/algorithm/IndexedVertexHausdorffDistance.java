@@ -0,0 +1,316 @@
+package com.vividsolutions.jcs.algorithm;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Computes the same distance as {@link VertexHausdorffDistance}, but finds the
+ * closest segment to each vertex through an index over the segments of the
+ * other geometry instead of scanning them all, so long ways (coastlines,
+ * riverbanks, landuse) cost roughly O(n log m) rather than O(n m).
+ * <p>
+ * The search for a vertex starts from the segment closest to the previous
+ * vertex, and stops as soon as the vertex is known to be no further away
+ * than the largest distance found so far, since it then cannot change the
+ * result. Given a limit, the computation stops at the first vertex whose
+ * distance reaches it.
+ * <p>
+ * Each instance keeps the index of the last first geometry per thread, since
+ * the same target is usually compared with many candidates, until #clear is
+ * called.
+ */
+public class IndexedVertexHausdorffDistance {
+  private final ThreadLocal lastIndex = new ThreadLocal();
+
+  /**
+   * Drops the calling thread's index of the last first geometry.
+   */
+  public void clear()
+  {
+    lastIndex.remove();
+  }
+
+  /**
+   * @return the same value as new VertexHausdorffDistance(g0, g1).distance()
+   */
+  public double distance(Geometry g0, Geometry g1)
+  {
+    return distance(g0, g1, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * @param limit a distance beyond which the exact value is not needed
+   * @return the distance if it is less than the limit; otherwise a value of
+   * at least the limit
+   */
+  public double distance(Geometry g0, Geometry g1, double limit)
+  {
+    if (g0.isEmpty() || g1.isEmpty()) {
+      return new VertexHausdorffDistance(g0, g1).distance();
+    }
+    double max = maxVertexDistance(g1, index(g0), 0, limit);
+    if (max >= limit) {
+      return max;
+    }
+    return maxVertexDistance(g0, new SegmentIndex(g1), max, limit);
+  }
+
+  private SegmentIndex index(Geometry geom)
+  {
+    SegmentIndex index = (SegmentIndex) lastIndex.get();
+    if (index == null || index.geometry != geom) {
+      index = new SegmentIndex(geom);
+      lastIndex.set(index);
+    }
+    return index;
+  }
+
+  /**
+   * @return the larger of max and the greatest distance from a vertex of
+   * pointGeom to the indexed geometry, or a value of at least the limit
+   */
+  private static double maxVertexDistance(Geometry pointGeom, SegmentIndex index,
+      double max, double limit)
+  {
+    return maxVertexDistance(pointGeom, new Search(index), max, limit);
+  }
+
+  private static double maxVertexDistance(Geometry pointGeom, Search search,
+      double max, double limit)
+  {
+    for (int i = 0; i < pointGeom.getNumGeometries(); i++) {
+      Geometry part = pointGeom.getGeometryN(i);
+      if (part instanceof GeometryCollection) {
+        max = maxVertexDistance(part, search, max, limit);
+      }
+      else if (part instanceof Polygon) {
+        Polygon poly = (Polygon) part;
+        max = search.maxDistance(poly.getExteriorRing().getCoordinateSequence(), max, limit);
+        for (int h = 0; h < poly.getNumInteriorRing() && max < limit; h++) {
+          max = search.maxDistance(poly.getInteriorRingN(h).getCoordinateSequence(), max, limit);
+        }
+      }
+      else if (part instanceof LineString) {
+        max = search.maxDistance(((LineString) part).getCoordinateSequence(), max, limit);
+      }
+      else if (part instanceof Point) {
+        max = search.maxDistance(((Point) part).getCoordinateSequence(), max, limit);
+      }
+      if (max >= limit) {
+        break;
+      }
+    }
+    return max;
+  }
+
+  /**
+   * The segments of a geometry (points as zero-length segments) in their
+   * original order, grouped a few at a time into a tree of bounding boxes.
+   * Consecutive segments are close together, so no sorting is needed.
+   */
+  static class SegmentIndex {
+    static final int NODE_CAPACITY = 8;
+
+    final Geometry geometry;
+    /** x0, y0, x1, y1 of each segment */
+    final double[] segments;
+    final int segmentCount;
+    /** minX, minY, maxX, maxY of each node of each level, leaves first */
+    final double[][] bounds;
+
+    SegmentIndex(Geometry geometry)
+    {
+      this.geometry = geometry;
+      double[] segs = new double[4 * geometry.getNumPoints()];
+      int n = addSegments(geometry, segs, 0);
+      segments = segs;
+      segmentCount = n;
+
+      int levelCount = 1;
+      for (int size = parentCount(n); size > 1; size = parentCount(size)) {
+        levelCount++;
+      }
+      bounds = new double[levelCount][];
+      bounds[0] = new double[4 * parentCount(n)];
+      for (int s = 0; s < n; s++) {
+        int b = 4 * (s / NODE_CAPACITY);
+        if (s % NODE_CAPACITY == 0) {
+          initBounds(bounds[0], b);
+        }
+        expand(bounds[0], b, segs[4 * s], segs[4 * s + 1]);
+        expand(bounds[0], b, segs[4 * s + 2], segs[4 * s + 3]);
+      }
+      for (int level = 1; level < levelCount; level++) {
+        double[] children = bounds[level - 1];
+        int childCount = children.length / 4;
+        double[] parents = new double[4 * parentCount(childCount)];
+        for (int c = 0; c < childCount; c++) {
+          int b = 4 * (c / NODE_CAPACITY);
+          if (c % NODE_CAPACITY == 0) {
+            initBounds(parents, b);
+          }
+          expand(parents, b, children[4 * c], children[4 * c + 1]);
+          expand(parents, b, children[4 * c + 2], children[4 * c + 3]);
+        }
+        bounds[level] = parents;
+      }
+    }
+
+    private static int parentCount(int size)
+    {
+      return (size + NODE_CAPACITY - 1) / NODE_CAPACITY;
+    }
+
+    private static void initBounds(double[] bounds, int b)
+    {
+      bounds[b] = bounds[b + 1] = Double.POSITIVE_INFINITY;
+      bounds[b + 2] = bounds[b + 3] = Double.NEGATIVE_INFINITY;
+    }
+
+    private static void expand(double[] bounds, int b, double x, double y)
+    {
+      bounds[b] = Math.min(bounds[b], x);
+      bounds[b + 1] = Math.min(bounds[b + 1], y);
+      bounds[b + 2] = Math.max(bounds[b + 2], x);
+      bounds[b + 3] = Math.max(bounds[b + 3], y);
+    }
+
+    private static int addSegments(Geometry geometry, double[] segs, int n)
+    {
+      for (int i = 0; i < geometry.getNumGeometries(); i++) {
+        Geometry part = geometry.getGeometryN(i);
+        if (part instanceof GeometryCollection) {
+          n = addSegments(part, segs, n);
+        }
+        else if (part instanceof Polygon) {
+          Polygon poly = (Polygon) part;
+          n = addSegments(poly.getExteriorRing().getCoordinateSequence(), segs, n);
+          for (int h = 0; h < poly.getNumInteriorRing(); h++) {
+            n = addSegments(poly.getInteriorRingN(h).getCoordinateSequence(), segs, n);
+          }
+        }
+        else if (part instanceof LineString) {
+          n = addSegments(((LineString) part).getCoordinateSequence(), segs, n);
+        }
+        else if (part instanceof Point && !part.isEmpty()) {
+          CoordinateSequence seq = ((Point) part).getCoordinateSequence();
+          segs[4 * n] = segs[4 * n + 2] = seq.getX(0);
+          segs[4 * n + 1] = segs[4 * n + 3] = seq.getY(0);
+          n++;
+        }
+      }
+      return n;
+    }
+
+    private static int addSegments(CoordinateSequence seq, double[] segs, int n)
+    {
+      for (int i = 0; i < seq.size() - 1; i++) {
+        segs[4 * n] = seq.getX(i);
+        segs[4 * n + 1] = seq.getY(i);
+        segs[4 * n + 2] = seq.getX(i + 1);
+        segs[4 * n + 3] = seq.getY(i + 1);
+        n++;
+      }
+      return n;
+    }
+  }
+
+  /**
+   * Finds the distances from vertices to an indexed geometry. Keeps its
+   * working state in fields, so it is only used by one thread.
+   */
+  private static class Search {
+    private SegmentIndex index;
+    private Coordinate pt = new Coordinate();
+    private Coordinate closestPt = new Coordinate();
+    private int lastNearest = 0;
+    private int[] stack;
+
+    Search(SegmentIndex index)
+    {
+      this.index = index;
+      stack = new int[2 * index.bounds.length * SegmentIndex.NODE_CAPACITY + 2];
+    }
+
+    /**
+     * @return the larger of max and the greatest distance from a vertex of
+     * seq to the index, or a value of at least the limit once one reaches it
+     */
+    double maxDistance(CoordinateSequence seq, double max, double limit)
+    {
+      for (int i = 0; i < seq.size() && max < limit; i++) {
+        pt.x = seq.getX(i);
+        pt.y = seq.getY(i);
+        max = Math.max(max, nearestDistance(max));
+      }
+      return max;
+    }
+
+    /**
+     * @return the distance from pt to the closest segment, or a value no
+     * greater than enough if the distance is known to be no greater than it
+     */
+    private double nearestDistance(double enough)
+    {
+      double best = segmentDistance(lastNearest);
+      if (best <= enough) {
+        return best;
+      }
+      double[][] bounds = index.bounds;
+      int top = 0;
+      stack[top++] = bounds.length - 1;
+      stack[top++] = 0;
+      while (top > 0) {
+        int node = stack[--top];
+        int level = stack[--top];
+        //Pruned only when clearly further away, so that round-off can't
+        //drop a segment at the same distance as the best
+        double boxDistance = boxDistance(bounds[level], 4 * node);
+        if (boxDistance > best * (1 + 1E-12)) {
+          continue;
+        }
+        int first = node * SegmentIndex.NODE_CAPACITY;
+        if (level == 0) {
+          int end = Math.min(first + SegmentIndex.NODE_CAPACITY, index.segmentCount);
+          for (int s = first; s < end; s++) {
+            double d = segmentDistance(s);
+            if (d < best) {
+              best = d;
+              lastNearest = s;
+              if (best <= enough) {
+                return best;
+              }
+            }
+          }
+          continue;
+        }
+        int end = Math.min(first + SegmentIndex.NODE_CAPACITY, bounds[level - 1].length / 4);
+        for (int child = first; child < end; child++) {
+          stack[top++] = level - 1;
+          stack[top++] = child;
+        }
+      }
+      return best;
+    }
+
+    private double boxDistance(double[] bounds, int b)
+    {
+      double dx = Math.max(0, Math.max(bounds[b] - pt.x, pt.x - bounds[b + 2]));
+      double dy = Math.max(0, Math.max(bounds[b + 1] - pt.y, pt.y - bounds[b + 3]));
+      return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private double segmentDistance(int s)
+    {
+      double[] segs = index.segments;
+      EuclideanDistanceToPoint.closestPoint(segs[4 * s], segs[4 * s + 1],
+          segs[4 * s + 2], segs[4 * s + 3], pt, closestPt);
+      return closestPt.distance(pt);
+    }
+  }
+}
@@ -36,6 +36,8 @@ package com.vividsolutions.jcs.algorithm;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateFilter;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFilter;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineSegment;
 /**
@@ -50,6 +52,9 @@ import com.vividsolutions.jts.geom.LineSegment;
  * One important part of this subset is Linestrings that are roughly parallel to each other,
  * and roughly equal in length.
  * </b>
+ * <p>
+ * Each instance computes a single distance and keeps its working state in
+ * instance fields, so separate instances may be used from separate threads.
  */
 public class VertexHausdorffDistance {
 
@@ -100,23 +105,28 @@ public class VertexHausdorffDistance {
   private void computeMaxPointDistance(Geometry pointGeom, Geometry geom, PointPairDistance ptDist)
   {
     MaxPointDistanceFilter distFilter = new MaxPointDistanceFilter(geom);
-    pointGeom.apply(distFilter);
+    pointGeom.apply((CoordinateSequenceFilter) distFilter);
     ptDist.setMaximum(distFilter.getMaxPointDistance());
   }
 
+  /**
+   * Applied as a CoordinateSequenceFilter, reads each vertex into a single
+   * Coordinate rather than asking the sequence for a new one per vertex.
+   */
   public static class MaxPointDistanceFilter
-      implements CoordinateFilter
+      implements CoordinateFilter, CoordinateSequenceFilter
   {
     private PointPairDistance maxPtDist = new PointPairDistance();
     private PointPairDistance minPtDist = new PointPairDistance();
     private Geometry geom;
+    private Coordinate pt = new Coordinate();
 
     public MaxPointDistanceFilter(Geometry geom)
     {
       this.geom = geom;
     }
 
-        @Override
+    @Override
     public void filter(Coordinate pt)
     {
       minPtDist.initialize();
@@ -124,6 +134,20 @@ public class VertexHausdorffDistance {
       maxPtDist.setMaximum(minPtDist);
     }
 
+    @Override
+    public void filter(CoordinateSequence seq, int i)
+    {
+      pt.x = seq.getX(i);
+      pt.y = seq.getY(i);
+      filter(pt);
+    }
+
+    @Override
+    public boolean isDone() { return false; }
+
+    @Override
+    public boolean isGeometryChanged() { return false; }
+
     public PointPairDistance getMaxPointDistance() { return maxPtDist; }
   }
 }
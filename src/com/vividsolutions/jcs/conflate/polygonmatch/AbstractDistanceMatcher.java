@@ -2,25 +2,109 @@ package com.vividsolutions.jcs.conflate.polygonmatch;
 
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureUtil;
+import com.vividsolutions.jump.geom.EnvelopeUtil;
 import java.awt.geom.Point2D;
 
-public abstract class AbstractDistanceMatcher extends IndependentCandidateMatcher {
+/**
+ * Scores candidates by a distance to the target. If a maximum distance is
+ * set, candidates at or beyond it score 0. Subclasses must compute a distance
+ * that is never less than the distance between the two geometries' envelopes,
+ * so that the matcher can be bounded by #searchEnvelope.
+ * <p>
+ * With a maximum distance, distances are computed by #distanceWithin, which
+ * need not finish once a distance is known to reach the maximum. By default
+ * it rejects pairs whose envelopes are that far apart before looking at
+ * their geometries.
+ */
+public abstract class AbstractDistanceMatcher extends IndependentCandidateMatcher
+        implements BoundedMatcher {
     protected double maxDistance = 0;
     
+    /**
+     * @return the target's envelope expanded by the maximum distance, or null
+     * if no maximum distance is set
+     */
+    @Override
+    public Envelope searchEnvelope(Feature target) {
+        Envelope envelope = FeatureUtil.getEnvelope(target);
+        if (maxDistance <= 0 || envelope.isNull()) {
+            return null;
+        }
+        return EnvelopeUtil.expand(envelope, maxDistance);
+    }
+
     @Override
     public double match(Geometry target, Geometry candidate) {
-        double distance = distance(target, candidate);
         if (maxDistance > 0) {
-            return Math.max(0, 1 - (distance / maxDistance));
+            return Math.max(0, 1 - (distanceWithin(target, candidate, maxDistance) / maxDistance));
         } else {
+            double distance = distance(target, candidate);
             return 1
                     - (distance
                     / combinedEnvelopeDiagonalDistance(target, candidate));
         }
     }
 
+    /**
+     * Scores the candidate by #distanceWithin(Feature, Feature, double) when
+     * there is a maximum distance.
+     */
+    @Override
+    public double score(Feature target, Feature candidate, double score) {
+        if (maxDistance <= 0) {
+            return match(target.getGeometry(), candidate.getGeometry());
+        }
+        return Math.max(0, 1 - (distanceWithin(target, candidate, maxDistance) / maxDistance));
+    }
+
     protected abstract double distance(Geometry target, Geometry candidate);
 
+    /**
+     * Returns the same distance as #distance(Geometry, Geometry). Override
+     * this to use values the features store rather than their geometries.
+     * @see #distanceWithin(Feature, Feature, double)
+     */
+    protected double distance(Feature target, Feature candidate) {
+        return distance(target.getGeometry(), candidate.getGeometry());
+    }
+
+    /**
+     * Returns the distance if it is less than the limit, and otherwise any
+     * value of at least the limit. Override this to stop computing a
+     * distance as soon as it is known to reach the limit.
+     */
+    protected double distanceWithin(Geometry target, Geometry candidate, double limit) {
+        double lowerBound = target.getEnvelopeInternal().distance(candidate.getEnvelopeInternal());
+        if (lowerBound >= limit) {
+            return lowerBound;
+        }
+        return distance(target, candidate);
+    }
+
+    /**
+     * As #distanceWithin(Geometry, Geometry, double), but first checks the
+     * features' envelopes, which lazily converted features know without
+     * creating their geometries. Override this to use values the features
+     * store, such as centroids.
+     */
+    protected double distanceWithin(Feature target, Feature candidate, double limit) {
+        double lowerBound = envelopeDistance(target, candidate);
+        if (lowerBound >= limit) {
+            return lowerBound;
+        }
+        return distanceWithin(target.getGeometry(), candidate.getGeometry(), limit);
+    }
+
+    /**
+     * @return the distance between the features' envelopes, which is never
+     * more than the distance between the features
+     */
+    protected double envelopeDistance(Feature target, Feature candidate) {
+        return FeatureUtil.getEnvelope(target).distance(FeatureUtil.getEnvelope(candidate));
+    }
+
     private double combinedEnvelopeDiagonalDistance(
         Geometry target,
         Geometry candidate) {
@@ -38,7 +38,6 @@ import com.vividsolutions.jts.util.Assert;
 import com.vividsolutions.jump.feature.*;
 import com.vividsolutions.jump.task.TaskMonitor;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -103,14 +102,14 @@ public class AreaFilterFCMatchFinder implements FCMatchFinder {
     }
 
     private boolean satisfiesAreaCriterion(Feature feature) {
-        double area = feature.getGeometry().getArea();
+        double area = FeatureUtil.getArea(feature);
         return minArea <= area && area <= maxArea;
     }
 
     public static Map blankTargetToMatchesMap(
         Collection targets,
         FeatureSchema matchesSchema) {
-        Map blankTargetToMatchesMap = new HashMap();
+        Map blankTargetToMatchesMap = new FeatureMap(true);
         for (Iterator i = targets.iterator(); i.hasNext();) {
             Feature target = (Feature) i.next();
             blankTargetToMatchesMap.put(target, new Matches(matchesSchema));
@@ -36,13 +36,14 @@ package com.vividsolutions.jcs.conflate.polygonmatch;
 
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureMap;
 import com.vividsolutions.jump.task.TaskMonitor;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
- * Applies a FeatureMatcher to each item in a FeatureCollection
+ * Applies a FeatureMatcher to each item in a FeatureCollection. The returned
+ * map iterates over the targets in the order of the target collection.
  */
 public class BasicFCMatchFinder implements FCMatchFinder {
 
@@ -63,7 +64,7 @@ public class BasicFCMatchFinder implements FCMatchFinder {
         TaskMonitor monitor) {
         monitor.allowCancellationRequests();
         monitor.report("Finding matches");
-        TreeMap map = new TreeMap();
+        FeatureMap map = new FeatureMap(true);
         int featuresProcessed = 0;
         int totalFeatures = targetFC.size();
         for (Iterator i = targetFC.iterator();
@@ -0,0 +1,22 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jump.feature.Feature;
+
+/**
+ * A FeatureMatcher that can only give a non-zero score to candidates lying
+ * near the target. ChainMatcher uses the search envelope to fetch candidates
+ * with FeatureCollection#query (which is fast on an IndexedFeatureCollection)
+ * instead of scoring every candidate.
+ */
+public interface BoundedMatcher extends FeatureMatcher {
+
+  /**
+   * Returns an envelope that the envelope of every candidate this matcher
+   * could score above 0 intersects.
+   * @param target the feature to match
+   * @return the search envelope, or null if this matcher is not currently
+   * bounded (in which case every candidate must be considered)
+   */
+  public Envelope searchEnvelope(Feature target);
+}
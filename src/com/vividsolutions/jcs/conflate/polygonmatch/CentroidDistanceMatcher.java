@@ -1,10 +1,40 @@
 package com.vividsolutions.jcs.conflate.polygonmatch;
 
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureUtil;
 
 public class CentroidDistanceMatcher extends AbstractDistanceMatcher {
     protected double distance(Geometry target, Geometry candidate) {
         return target.getCentroid().distance(
             candidate.getCentroid());
     }
+
+    /**
+     * Uses the features' stored centroids where they have them, e.g. in a
+     * ColumnarFeatureCollection.
+     */
+    @Override
+    protected double distance(Feature target, Feature candidate) {
+        Coordinate targetCentroid = FeatureUtil.getCentroid(target);
+        Coordinate candidateCentroid = FeatureUtil.getCentroid(candidate);
+        if (targetCentroid == null || candidateCentroid == null) {
+            return super.distance(target, candidate);
+        }
+        return targetCentroid.distance(candidateCentroid);
+    }
+
+    /**
+     * Rejects candidates by their envelopes, which contain their centroids,
+     * before looking at the centroids.
+     */
+    @Override
+    protected double distanceWithin(Feature target, Feature candidate, double limit) {
+        double lowerBound = envelopeDistance(target, candidate);
+        if (lowerBound >= limit) {
+            return lowerBound;
+        }
+        return distance(target, candidate);
+    }
 }
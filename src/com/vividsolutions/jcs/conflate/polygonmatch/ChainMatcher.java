@@ -34,11 +34,14 @@
 
 package com.vividsolutions.jcs.conflate.polygonmatch;
 
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureSchema;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Composes several FeatureMatchers into one. Candidate features are whittled
@@ -49,8 +52,22 @@ import java.util.Iterator;
  * Typically you use the Chained Matcher to do some initial filtering before
  * the "real" matching. The scores from this initial filtering are usually
  * ignored (they're usually just 1 or 0, as in the case of WindowFilter).
+ * <P>
+ * In fused mode (see #setFused), runs of consecutive PerCandidateMatchers are
+ * applied together in a single pass over a reusable score buffer; a Matches
+ * object is only built for a FeatureMatcher that needs to see all the
+ * candidates at once (such as TopScoreMatcher), and for the result. The
+ * scores are the same in both modes.
+ * <P>
+ * If a BoundedMatcher is preceded only by PerCandidateMatchers, its search
+ * envelope is used to query the candidates (see FeatureCollection#query)
+ * before any matcher is applied, so distant candidates are never scored.
+ * This gives the same matches and scores, although they may come back in the
+ * order of the query rather than the order of the candidate collection. Pass
+ * an IndexedFeatureCollection for the query to be fast. The same envelope is
+ * the ChainMatcher's own #searchEnvelope.
  */
-public class ChainMatcher implements FeatureMatcher {
+public class ChainMatcher implements BoundedMatcher {
 
   /**
    * Creates a ChainMatcher composed of the given matchers.
@@ -58,10 +75,85 @@ public class ChainMatcher implements FeatureMatcher {
    */
   public ChainMatcher(FeatureMatcher[] matchers) {
         this.matchers.addAll(Arrays.asList(matchers));
+        compileStages();
   }
 
   private ArrayList matchers = new ArrayList();
 
+  /**
+   * The matchers grouped for fused mode: each element is either a
+   * PerCandidateMatcher[] to be run in one pass, or a FeatureMatcher that must
+   * be given a Matches object.
+   */
+  private List stages = new ArrayList();
+
+  private boolean fused = false;
+
+  /**
+   * The TargetCachingMatchers scored one candidate at a time in fused mode,
+   * which are told when a target is done.
+   */
+  private List targetCaches = new ArrayList();
+
+  /**
+   * The matcher whose search envelope bounds the candidates, or null.
+   */
+  private BoundedMatcher boundingMatcher = null;
+
+  /**
+   * One buffer per thread, since a FeatureMatcher may be used concurrently.
+   */
+  private ThreadLocal scoreBuffer = new ThreadLocal() {
+        @Override
+    protected Object initialValue() {
+      return new ScoreBuffer();
+    }
+  };
+
+  /**
+   * Sets whether consecutive PerCandidateMatchers are run in a single pass.
+   * @param fused true to use fused mode; false (the default) to apply each
+   * FeatureMatcher in turn
+   */
+  public void setFused(boolean fused) {
+    this.fused = fused;
+  }
+
+  public boolean isFused() {
+    return fused;
+  }
+
+  private void compileStages() {
+    ArrayList run = new ArrayList();
+    boolean onlyPerCandidateSoFar = true;
+    for (Iterator i = matchers.iterator(); i.hasNext(); ) {
+      FeatureMatcher matcher = (FeatureMatcher) i.next();
+      //A preceding matcher that looks at all the candidates together could
+      //give different results if distant candidates were left out.
+      if (onlyPerCandidateSoFar && boundingMatcher == null
+          && matcher instanceof BoundedMatcher) {
+        boundingMatcher = (BoundedMatcher) matcher;
+      }
+      onlyPerCandidateSoFar &= matcher instanceof PerCandidateMatcher;
+      if (matcher instanceof PerCandidateMatcher) {
+        run.add(matcher);
+        if (matcher instanceof TargetCachingMatcher) {
+          targetCaches.add(matcher);
+        }
+        continue;
+      }
+      addRun(run);
+      stages.add(matcher);
+    }
+    addRun(run);
+  }
+
+  private void addRun(ArrayList run) {
+    if (run.isEmpty()) { return; }
+    stages.add(run.toArray(new PerCandidateMatcher[run.size()]));
+    run.clear();
+  }
+
   /**
    * Applies the FeatureMatchers, in sequence, to the list of candidates.
    * @param target the feature to match
@@ -71,12 +163,140 @@ public class ChainMatcher implements FeatureMatcher {
    */
     @Override
   public Matches match(Feature target, FeatureCollection candidates) {
+    if (fused) { return matchFused(target, candidates); }
     Matches survivors = new Matches(
-        candidates.getFeatureSchema(), candidates.getFeatures());
+        candidates.getFeatureSchema(), searchCandidates(target, candidates));
     for (Iterator i = matchers.iterator(); i.hasNext(); ) {
       FeatureMatcher matcher = (FeatureMatcher) i.next();
       survivors = matcher.match(target, survivors);
     }
     return survivors;
   }
+
+  private Matches matchFused(Feature target, FeatureCollection candidates) {
+    ScoreBuffer buffer = (ScoreBuffer) scoreBuffer.get();
+    try {
+      buffer.load(searchCandidates(target, candidates));
+      for (Iterator i = stages.iterator(); i.hasNext(); ) {
+        Object stage = i.next();
+        if (stage instanceof PerCandidateMatcher[]) {
+          buffer.apply(target, (PerCandidateMatcher[]) stage);
+        } else {
+          buffer.load(((FeatureMatcher) stage).match(
+              target, buffer.toMatches(candidates.getFeatureSchema())));
+        }
+      }
+      return buffer.toMatches(candidates.getFeatureSchema());
+    } finally {
+      buffer.clear();
+      for (Iterator i = targetCaches.iterator(); i.hasNext(); ) {
+        ((TargetCachingMatcher) i.next()).targetDone();
+      }
+    }
+  }
+
+  /**
+   * @return the search envelope of the first BoundedMatcher preceded only by
+   * PerCandidateMatchers, or null if there is no such matcher
+   */
+  @Override
+  public Envelope searchEnvelope(Feature target) {
+    return boundingMatcher == null ? null : boundingMatcher.searchEnvelope(target);
+  }
+
+  /**
+   * Returns the candidates within the bounding matcher's search envelope, or
+   * all of them if the chain is not bounded.
+   */
+  private List searchCandidates(Feature target, FeatureCollection candidates) {
+    Envelope searchEnvelope = searchEnvelope(target);
+    if (searchEnvelope == null) {
+      return candidates.getFeatures();
+    }
+    return candidates.query(searchEnvelope);
+  }
+
+  /**
+   * The surviving candidates and their scores, in candidate order.
+   */
+  private static class ScoreBuffer {
+    private Feature[] features = new Feature[16];
+    private double[] scores = new double[16];
+    private int size = 0;
+
+    /**
+     * Replaces the contents with the given features, each with score 1.
+     */
+    public void load(List candidates) {
+      ensureCapacity(candidates.size());
+      int oldSize = size;
+      size = 0;
+      for (Iterator i = candidates.iterator(); i.hasNext(); ) {
+        features[size] = (Feature) i.next();
+        scores[size] = 1;
+        size++;
+      }
+      clear(size, oldSize);
+    }
+
+    public void load(Matches matches) {
+      ensureCapacity(matches.size());
+      for (int i = 0; i < matches.size(); i++) {
+        features[i] = matches.getFeature(i);
+        scores[i] = matches.getScore(i);
+      }
+      clear(matches.size(), size);
+      size = matches.size();
+    }
+
+    /**
+     * Runs each candidate through the matchers in turn, dropping it as soon
+     * as its score reaches 0, and compacts the survivors in place.
+     */
+    public void apply(Feature target, PerCandidateMatcher[] matchers) {
+      int survivors = 0;
+      for (int i = 0; i < size; i++) {
+        double score = scores[i];
+        for (int j = 0; j < matchers.length && score > 0; j++) {
+          score = matchers[j].score(target, features[i], score);
+        }
+        if (score > 0) {
+          features[survivors] = features[i];
+          scores[survivors] = score;
+          survivors++;
+        }
+      }
+      clear(survivors, size);
+      size = survivors;
+    }
+
+    public Matches toMatches(FeatureSchema schema) {
+      Matches matches = new Matches(schema, size);
+      for (int i = 0; i < size; i++) {
+        matches.add(features[i], scores[i]);
+      }
+      return matches;
+    }
+
+    /**
+     * Drops the feature references so the buffer doesn't keep them alive.
+     */
+    public void clear() {
+      clear(0, size);
+      size = 0;
+    }
+
+    private void clear(int from, int to) {
+      Arrays.fill(features, from, Math.max(from, to), null);
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity <= features.length) { return; }
+      int newCapacity = Math.max(capacity, features.length * 2);
+      Feature[] newFeatures = new Feature[newCapacity];
+      System.arraycopy(features, 0, newFeatures, 0, size);
+      features = newFeatures;
+      scores = new double[newCapacity];
+    }
+  }
 }
@@ -136,7 +136,7 @@ public class CombinatorialFCMatchFinder implements FCMatchFinder {
 
   protected List featuresWithCommonEdge(Feature feature, FeatureCollection fc) {
     ArrayList featuresWithCommonEdge = new ArrayList();
-    List candidates = fc.query(feature.getGeometry().getEnvelopeInternal());
+    List candidates = fc.query(FeatureUtil.getEnvelope(feature));
     for (Iterator i = candidates.iterator(); i.hasNext(); ) {
       Feature candidate = (Feature) i.next();
       if (feature == candidate || shareEdge(feature.getGeometry(), candidate.getGeometry())) {
@@ -200,7 +200,7 @@ public class CombinatorialFCMatchFinder implements FCMatchFinder {
     monitor.report("Splitting composites");
     int compositesProcessed = 0;
     int totalComposites = compositeToMatchesMap.size();
-    Map newMap = new HashMap();
+    Map newMap = new FeatureMap(true);
     for (Iterator i = compositeToMatchesMap.keySet().iterator(); i.hasNext() && ! monitor.isCancelRequested(); ) {
       CompositeFeature composite = (CompositeFeature) i.next();
       compositesProcessed++;
@@ -36,6 +36,8 @@ package com.vividsolutions.jcs.conflate.polygonmatch;
 
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.util.Assert;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureUtil;
 
 /**
  * Uses (4 x pi x Area) / (Perimeter^2) as a shape characteristic. The
@@ -51,14 +53,34 @@ public class CompactnessMatcher extends IndependentCandidateMatcher {
    * characteristic, defined above.
    */
   public double match(Geometry target, Geometry candidate) {
-    double score = 1 - Math.abs(characteristic(target)
-                              - characteristic(candidate));
+    return toScore(characteristic(target), characteristic(candidate));
+  }
+
+  /**
+   * Uses the areas and lengths the features keep, rather than measuring
+   * both geometries for every pair.
+   */
+  @Override
+  public double score(Feature target, Feature candidate, double score) {
+    return toScore(characteristic(target), characteristic(candidate));
+  }
+
+  private double toScore(double targetCharacteristic, double candidateCharacteristic) {
+    double score = 1 - Math.abs(targetCharacteristic - candidateCharacteristic);
     Assert.isTrue(score >= 0);
     Assert.isTrue(score <= 1);
     return score;
   }
 
   protected double characteristic(Geometry g) {
-    return 4 * Math.PI * g.getArea() / Math.pow(g.getLength(), 2);
+    return characteristic(g.getArea(), g.getLength());
+  }
+
+  private double characteristic(Feature f) {
+    return characteristic(FeatureUtil.getArea(f), FeatureUtil.getLength(f));
+  }
+
+  private static double characteristic(double area, double length) {
+    return 4 * Math.PI * area / Math.pow(length, 2);
   }
 }
@@ -3,8 +3,11 @@ import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
 import com.vividsolutions.jump.task.TaskMonitor;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 /**
  * Enforces a one-to-one relationship between target features and
@@ -26,15 +29,21 @@ public class DisambiguatingFCMatchFinder implements FCMatchFinder {
         ArrayList targets = new ArrayList();
         ArrayList candidates = new ArrayList();
         ArrayList scores = new ArrayList();
+        //Identity sets rather than #contains on the lists above, which made
+        //this loop quadratic in the number of scored pairs
+        Set assignedTargets = Collections.newSetFromMap(new IdentityHashMap());
+        Set assignedCandidates = Collections.newSetFromMap(new IdentityHashMap());
         SortedSet matchSet = DisambiguationMatch.createDisambiguationMatches(matchFinder.match(targetFC, candidateFC, monitor), monitor);
         monitor.report("Discarding inferior matches");
         int j = 0;
         for (Iterator i = matchSet.iterator(); i.hasNext();) {
             DisambiguationMatch match = (DisambiguationMatch) i.next();
             monitor.report(++j, matchSet.size(), "matches");
-            if (targets.contains(match.getTarget()) || candidates.contains(match.getCandidate())) {
+            if (assignedTargets.contains(match.getTarget()) || assignedCandidates.contains(match.getCandidate())) {
                 continue;
             }
+            assignedTargets.add(match.getTarget());
+            assignedCandidates.add(match.getCandidate());
             targets.add(match.getTarget());
             candidates.add(match.getCandidate());
             scores.add(new Double(match.getScore()));
@@ -7,11 +7,15 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 class DisambiguationMatch implements Comparable {
+    private static final AtomicLong nextSequenceNumber = new AtomicLong();
     private Feature target;
     private Feature candidate;
     private double score;
+    //Orders matches which are otherwise alike, see #compareTo
+    private final long sequenceNumber = nextSequenceNumber.getAndIncrement();
     public double getScore() {
         return score;
     }
@@ -37,7 +41,13 @@ class DisambiguationMatch implements Comparable {
         if (score < other.score) { return 1; }
         if (target.compareTo(other.target) != 0) { return target.compareTo(other.target); } 
         if (candidate.compareTo(other.candidate) != 0) { return candidate.compareTo(other.candidate); }
-        return 0;
+        //Features with identical geometry must not collapse into one entry of
+        //the sorted set, so fall back to telling the features themselves apart:
+        //by ID, and failing that by creation order, which unlike identity
+        //hash codes never ties.
+        if (target.getID() != other.target.getID()) { return target.getID() < other.target.getID() ? -1 : 1; }
+        if (candidate.getID() != other.candidate.getID()) { return candidate.getID() < other.candidate.getID() ? -1 : 1; }
+        return sequenceNumber < other.sequenceNumber ? -1 : sequenceNumber > other.sequenceNumber ? 1 : 0;
     }
     public static SortedSet createDisambiguationMatches(Map targetToMatchesMap, TaskMonitor monitor) {
         TreeSet set = new TreeSet();
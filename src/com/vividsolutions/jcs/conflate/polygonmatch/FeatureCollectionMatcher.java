@@ -36,9 +36,9 @@ package com.vividsolutions.jcs.conflate.polygonmatch;
 
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * Applies a FeatureMatcher to each item in a FeatureCollection
@@ -60,7 +60,7 @@ public class FeatureCollectionMatcher {
    * @return a map of target-feature to matching-features (a Matches object)
    */
   public Map match(FeatureCollection targetFC, FeatureCollection candidateFC) {
-    TreeMap map = new TreeMap();
+    FeatureMap map = new FeatureMap(true);
     for (Iterator i = targetFC.iterator(); i.hasNext(); ) {
       Feature subjectFeature = (Feature) i.next();
       map.put(subjectFeature, matcher.match(subjectFeature, candidateFC));
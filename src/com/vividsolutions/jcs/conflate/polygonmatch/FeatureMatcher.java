@@ -47,6 +47,13 @@ import com.vividsolutions.jump.feature.FeatureCollection;
  *       done using setter methods
  *   <LI>composite FeatureMatchers should have an #add(FeatureMatcher) method
  * </UL>
+ * <P>
+ * Thread safety: once configured, a FeatureMatcher may be called from several
+ * threads at once (see ParallelFCMatchFinder). Implementors must therefore keep
+ * any scratch state local to the #match call (or per thread), must not modify
+ * the target, the candidates or their geometries, and should return a new
+ * Matches object from each call. Setters are not expected to be called while
+ * matching is in progress.
  */
 public interface FeatureMatcher {
 
@@ -1,16 +1,37 @@
 package com.vividsolutions.jcs.conflate.polygonmatch;
 
+import com.vividsolutions.jcs.algorithm.IndexedVertexHausdorffDistance;
 import com.vividsolutions.jcs.algorithm.VertexHausdorffDistance;
 import com.vividsolutions.jts.geom.Geometry;
 
 /**
  * Uses an approximation of the Hausdorff distance.
  * @see VertexHausdorffDistance
+ * @see IndexedVertexHausdorffDistance
  */
-public class HausdorffDistanceMatcher extends AbstractDistanceMatcher {
+public class HausdorffDistanceMatcher extends AbstractDistanceMatcher
+        implements TargetCachingMatcher {
+    private final IndexedVertexHausdorffDistance hausdorff = new IndexedVertexHausdorffDistance();
 
     protected double distance(Geometry target, Geometry candidate) {
-        return new VertexHausdorffDistance(target, candidate).distance();
+        return hausdorff.distance(target, candidate);
+    }
+
+    /**
+     * Stops going through the vertices once the distance reaches the limit.
+     */
+    @Override
+    protected double distanceWithin(Geometry target, Geometry candidate, double limit) {
+        double lowerBound = target.getEnvelopeInternal().distance(candidate.getEnvelopeInternal());
+        if (lowerBound >= limit) {
+            return lowerBound;
+        }
+        return hausdorff.distance(target, candidate, limit);
+    }
+
+    @Override
+    public void targetDone() {
+        hausdorff.clear();
     }
     
 }
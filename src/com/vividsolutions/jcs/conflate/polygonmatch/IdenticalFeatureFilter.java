@@ -6,7 +6,7 @@ import com.vividsolutions.jump.feature.FeatureCollection;
 /**
  * Filters out matches where features are identical.
  */
-public class IdenticalFeatureFilter implements FeatureMatcher {
+public class IdenticalFeatureFilter implements PerCandidateMatcher {
     
   /**
    * Filters out matches where features are identical.
@@ -19,10 +19,17 @@ public class IdenticalFeatureFilter implements FeatureMatcher {
     Matches survivors = new Matches(candidates.getFeatureSchema());
     Matches allMatches = (Matches) candidates;
     for (int i = 0; i < allMatches.size(); i++) {
-      if (!allMatches.getFeature(i).equals(target)) {
-        survivors.add(allMatches.getFeature(i), allMatches.getScore(i));
-      }
+      survivors.add(allMatches.getFeature(i),
+          score(target, allMatches.getFeature(i), allMatches.getScore(i)));
     }
     return survivors;
   }
+
+  /**
+   * @return the score unchanged, or 0 if the candidate is the target
+   */
+    @Override
+  public double score(Feature target, Feature candidate, double score) {
+    return candidate.equals(target) ? 0 : score;
+  }
 }
\ No newline at end of file
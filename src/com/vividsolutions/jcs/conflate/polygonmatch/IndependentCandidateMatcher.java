@@ -42,23 +42,49 @@ import java.util.Iterator;
 /**
  * Base class of FeatureMatchers that compare the target to each candidate
  * in turn -- the comparisons only use one candidate at a time.
+ * <P>
+ * As with any FeatureMatcher, #match(Geometry, Geometry) may be called from
+ * several threads at once. It must not modify either geometry (clone first if
+ * an algorithm needs to transform them) and must not keep per-comparison
+ * state in fields.
  */
-public abstract class IndependentCandidateMatcher implements FeatureMatcher {
+public abstract class IndependentCandidateMatcher implements PerCandidateMatcher {
 
   public IndependentCandidateMatcher() {
   }
 
+  /**
+   * Scores each candidate in turn, then lets a TargetCachingMatcher drop
+   * what it kept about the target.
+   */
     @Override
   public Matches match(Feature target, FeatureCollection candidates) {
     Matches matches = new Matches(candidates.getFeatureSchema());
-    for (Iterator i = candidates.iterator(); i.hasNext(); ) {
-      Feature candidate = (Feature) i.next();
-      double score = match(target.getGeometry(), candidate.getGeometry());
-      if (score > 0) { matches.add(candidate, score); }
+    try {
+      for (Iterator i = candidates.iterator(); i.hasNext(); ) {
+        Feature candidate = (Feature) i.next();
+        double score = score(target, candidate, 1);
+        if (score > 0) { matches.add(candidate, score); }
+      }
+    } finally {
+      if (this instanceof TargetCachingMatcher) {
+        ((TargetCachingMatcher) this).targetDone();
+      }
     }
     return matches;
   }
 
+  /**
+   * Compares the target to the candidate; the incoming score is ignored.
+   * Subclasses may override this to use what the features store (such as
+   * envelopes or centroids) instead of their geometries.
+   * @see #match(Geometry, Geometry)
+   */
+    @Override
+  public double score(Feature target, Feature candidate, double score) {
+    return match(target.getGeometry(), candidate.getGeometry());
+  }
+
   /**
    * Compares the target to the candidate feature. Called for each candidate
    * feature by #match(Feature, FeatureCollection).
@@ -38,8 +38,9 @@ import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.util.Assert;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
-import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureUtil;
 import com.vividsolutions.jump.feature.FeatureSchema;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -48,24 +49,47 @@ import java.util.List;
 /**
  * A FeatureCollection that stores the "score" of each Feature.  The score is
  * a number between 0.0 and 1.0 that indicates the confidence of a match.
+ * <P>
+ * A Matches object is created for every target by every FeatureMatcher in a
+ * chain, so the features and scores are kept in parallel arrays which grow on
+ * demand, rather than in a FeatureDataset and a list of boxed Doubles.
+ * #add(Feature, double) and #getScore(int) do not allocate (except to grow
+ * the arrays), and the envelope is only computed if asked for.
  */
 public class Matches implements FeatureCollection, Cloneable {
 
+    private static final int DEFAULT_CAPACITY = 4;
+
     /**
      * Creates a Matches object.
      * @param schema metadata applicable to the features that will be stored in
      * this Matches object
      */
     public Matches(FeatureSchema schema) {
-        dataset = new FeatureDataset(schema);
+        this(schema, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a Matches object with room for the given number of matches
+     * before its arrays need to grow.
+     * @param schema metadata applicable to the features that will be stored in
+     * this Matches object
+     * @param initialCapacity the expected number of matches
+     */
+    public Matches(FeatureSchema schema, int initialCapacity) {
+        this.schema = schema;
+        features = new Feature[Math.max(1, initialCapacity)];
+        scores = new double[features.length];
     }
 
     @Override
     protected Object clone() {
-        Matches clone = new Matches(dataset.getFeatureSchema());
-        for (int i = 0; i < size(); i++) {
-            clone.add(getFeature(i), getScore(i));
-        }
+        Matches clone = new Matches(schema, size);
+        System.arraycopy(features, 0, clone.features, 0, size);
+        System.arraycopy(scores, 0, clone.scores, 0, size);
+        clone.size = size;
+        clone.topMatch = topMatch;
+        clone.topScore = topScore;
         return clone;
     }
 
@@ -76,15 +100,19 @@ public class Matches implements FeatureCollection, Cloneable {
      * @param features added to the Matches, each with the max score (1.0)
      */
     public Matches(FeatureSchema schema, List features) {
-        this(schema);
+        this(schema, features.size());
         for (Iterator i = features.iterator(); i.hasNext();) {
             Feature match = (Feature) i.next();
             add(match, 1);
         }
     }
 
-    private FeatureDataset dataset;
-    private ArrayList scores = new ArrayList();
+    private FeatureSchema schema;
+    private Feature[] features;
+    private double[] scores;
+    private int size = 0;
+    private Envelope envelope = null;
+    private List featureList = null;
 
     /**
      * This method is not supported, because added features need to be associated
@@ -160,12 +188,23 @@ public class Matches implements FeatureCollection, Cloneable {
      * @param score the confidence of the match, ranging from 0 to 1
      */
     public void add(Feature feature, double score) {
-        Assert.isTrue(0 <= score && score <= 1, "Score = " + score);
+        if (!(0 <= score && score <= 1)) {
+            //Not Assert#isTrue(boolean, String), which would build the message
+            //on every call
+            Assert.shouldNeverReachHere("Score = " + score);
+        }
         if (score == 0) {
             return;
         }
-        scores.add(new Double(score));
-        dataset.add(feature);
+        if (size == features.length) {
+            grow();
+        }
+        features[size] = feature;
+        scores[size] = score;
+        size++;
+        if (envelope != null) {
+            envelope.expandToInclude(FeatureUtil.getEnvelope(feature));
+        }
         if (score > topScore) {
             topScore = score;
             topMatch = feature;
@@ -192,38 +231,92 @@ public class Matches implements FeatureCollection, Cloneable {
      * @return the confidence of the ith match
      */
     public double getScore(int i) {
-        return ((Double) scores.get(i)).doubleValue();
+        checkIndex(i);
+        return scores[i];
     }
 
     public FeatureSchema getFeatureSchema() {
-        return dataset.getFeatureSchema();
+        return schema;
     }
 
+    /**
+     * Computed on first use, then kept up to date as matches are added.
+     */
     public Envelope getEnvelope() {
-        return dataset.getEnvelope();
+        if (envelope == null) {
+            envelope = new Envelope();
+            for (int i = 0; i < size; i++) {
+                envelope.expandToInclude(FeatureUtil.getEnvelope(features[i]));
+            }
+        }
+        return envelope;
     }
 
     public int size() {
-        return dataset.size();
+        return size;
     }
 
     public boolean isEmpty() {
-        return dataset.isEmpty();
+        return size == 0;
     }
 
     public Feature getFeature(int index) {
-        return dataset.getFeature(index);
+        checkIndex(index);
+        return features[index];
     }
 
+    /**
+     * @return a read-only view of the matched features, which reflects later
+     * additions
+     */
     public List getFeatures() {
-        return dataset.getFeatures();
+        if (featureList == null) {
+            featureList = new AbstractList() {
+                @Override
+                public Object get(int index) {
+                    return getFeature(index);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return featureList;
     }
 
     public Iterator iterator() {
-        return dataset.iterator();
+        return getFeatures().iterator();
     }
 
     public List query(Envelope envelope) {
-        return dataset.query(envelope);
+        ArrayList queryResult = new ArrayList();
+        if (!envelope.intersects(getEnvelope())) {
+            return queryResult;
+        }
+        for (int i = 0; i < size; i++) {
+            if (FeatureUtil.getEnvelope(features[i]).intersects(envelope)) {
+                queryResult.add(features[i]);
+            }
+        }
+        return queryResult;
+    }
+
+    private void grow() {
+        int capacity = features.length * 2;
+        Feature[] newFeatures = new Feature[capacity];
+        double[] newScores = new double[capacity];
+        System.arraycopy(features, 0, newFeatures, 0, size);
+        System.arraycopy(scores, 0, newScores, 0, size);
+        features = newFeatures;
+        scores = newScores;
+    }
+
+    private void checkIndex(int i) {
+        //The arrays are usually larger than size, so they won't catch this
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
     }
 }
@@ -40,7 +40,7 @@ import com.vividsolutions.jump.feature.FeatureCollection;
 /**
  * Filters out shapes with a score below a given value.
  */
-public class MinScoreMatcher implements FeatureMatcher {
+public class MinScoreMatcher implements PerCandidateMatcher {
 
   /**
    * Creates a MinScoreMatcher with a minimum score of 0. Be sure to call
@@ -78,10 +78,17 @@ public class MinScoreMatcher implements FeatureMatcher {
     Matches survivors = new Matches(candidates.getFeatureSchema());
     Matches allMatches = (Matches) candidates;
     for (int i = 0; i < allMatches.size(); i++) {
-      if (allMatches.getScore(i) >= minScore) {
-        survivors.add(allMatches.getFeature(i), allMatches.getScore(i));
-      }
+      survivors.add(allMatches.getFeature(i),
+          score(target, allMatches.getFeature(i), allMatches.getScore(i)));
     }
     return survivors;
   }
+
+  /**
+   * @return the score unchanged, or 0 if it is below the threshold
+   */
+    @Override
+  public double score(Feature target, Feature candidate, double score) {
+    return score >= minScore ? score : 0;
+  }
 }
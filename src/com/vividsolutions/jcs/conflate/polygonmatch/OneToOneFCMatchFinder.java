@@ -37,9 +37,9 @@ package com.vividsolutions.jcs.conflate.polygonmatch;
 import com.vividsolutions.jts.util.Assert;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureMap;
 import com.vividsolutions.jump.feature.IndexedFeatureCollection;
 import com.vividsolutions.jump.task.TaskMonitor;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -82,7 +82,7 @@ public class OneToOneFCMatchFinder implements FCMatchFinder {
   private Map commonMatches(Map featureToMatchesMap1, Map featureToMatchesMap2, TaskMonitor monitor) {
     int featuresProcessed = 0;
     int totalFeatures = featureToMatchesMap1.size();
-    Map commonMatches = new HashMap();
+    Map commonMatches = new FeatureMap(true);
     for (Iterator i = featureToMatchesMap1.keySet().iterator(); i.hasNext() && ! monitor.isCancelRequested(); ) {
       Feature key1 = (Feature) i.next();
       featuresProcessed++;
@@ -101,7 +101,7 @@ public class OneToOneFCMatchFinder implements FCMatchFinder {
   private Map filterMatches(Map featureToMatchesMap, TaskMonitor monitor) {
     int featuresProcessed = 0;
     int totalFeatures = featureToMatchesMap.size();
-    HashMap newMap = new HashMap();
+    FeatureMap newMap = new FeatureMap(true);
     if (featureToMatchesMap.isEmpty()) { return newMap; }
     for (Iterator i = featureToMatchesMap.keySet().iterator(); i.hasNext() && ! monitor.isCancelRequested(); ) {
       Feature feature = (Feature) i.next();
@@ -119,7 +119,7 @@ public class OneToOneFCMatchFinder implements FCMatchFinder {
   protected Map invert(Map featureToMatchesMap, TaskMonitor monitor) {
     int featuresProcessed = 0;
     int totalFeatures = featureToMatchesMap.size();
-    HashMap newMap = new HashMap();
+    FeatureMap newMap = new FeatureMap(true);
     if (featureToMatchesMap.isEmpty()) { return newMap; }
     for (Iterator i = featureToMatchesMap.keySet().iterator(); i.hasNext() && ! monitor.isCancelRequested(); ) {
       Feature oldKey = (Feature) i.next();
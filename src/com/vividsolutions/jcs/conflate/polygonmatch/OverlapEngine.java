@@ -0,0 +1,84 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+/**
+ * Computes the area of intersection of a target with each of its candidates,
+ * using a prepared target geometry to avoid an overlay for candidates which
+ * are disjoint from the target or covered by it.
+ * <p>
+ * Candidates are scored one target at a time, so each thread keeps the
+ * prepared geometry of the last target it saw, until #clear is called.
+ * Prepared geometries build their indexes lazily and are not thread-safe,
+ * which is why they are not shared. Each matcher has an engine of its own
+ * (see TargetCachingMatcher), so no target outlives its matcher.
+ * <p>
+ * Given a grid resolution, the area is instead estimated with a
+ * RasterOverlap, for when an exact overlay area is not needed.
+ */
+public class OverlapEngine {
+    private final ThreadLocal lastPrepared = new ThreadLocal();
+
+    /**
+     * Drops the calling thread's prepared target.
+     */
+    public void clear() {
+        lastPrepared.remove();
+    }
+
+    /**
+     * @param candidateArea the candidate's area, returned as is if the target
+     * covers the candidate
+     * @return the area of the intersection of the target and the candidate
+     */
+    public double intersectionArea(Geometry target, Geometry candidate,
+            double candidateArea) {
+        return intersectionArea(target, candidate, candidateArea, 0);
+    }
+
+    /**
+     * @param gridResolution if greater than 0, the number of cells along the
+     * longer side of the grid used to estimate the area (see RasterOverlap)
+     */
+    public double intersectionArea(Geometry target, Geometry candidate,
+            double candidateArea, int gridResolution) {
+        if (target.isEmpty() || candidate.isEmpty()
+                || !target.getEnvelopeInternal().intersects(candidate.getEnvelopeInternal())) {
+            return 0;
+        }
+        if (gridResolution > 0) {
+            return RasterOverlap.intersectionArea(target, candidate, gridResolution);
+        }
+        PreparedGeometry prepared = prepare(target);
+        if (!prepared.intersects(candidate)) {
+            return 0;
+        }
+        if (prepared.covers(candidate)) {
+            return candidateArea;
+        }
+        return target.intersection(candidate).getArea();
+    }
+
+    /**
+     * @return the symmetric difference area, areaA + areaB - 2 x the
+     * intersection area, without building the symmetric difference
+     */
+    public static double symDifferenceArea(double targetArea, double candidateArea,
+            double intersectionArea) {
+        double area = targetArea + candidateArea - 2 * intersectionArea;
+        //Curb roundoff error, which could otherwise make identical shapes
+        //have a slightly negative difference
+        return Math.max(0, area);
+    }
+
+    private PreparedGeometry prepare(Geometry target) {
+        PreparedGeometry prepared = (PreparedGeometry) lastPrepared.get();
+        if (prepared == null || prepared.getGeometry() != target) {
+            prepared = PreparedGeometryFactory.prepare(target);
+            lastPrepared.set(prepared);
+        }
+        return prepared;
+    }
+}
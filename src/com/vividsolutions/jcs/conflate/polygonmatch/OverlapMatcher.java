@@ -1,13 +1,50 @@
 package com.vividsolutions.jcs.conflate.polygonmatch;
 
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureUtil;
 
-public class OverlapMatcher extends IndependentCandidateMatcher {
+public class OverlapMatcher extends IndependentCandidateMatcher
+        implements TargetCachingMatcher {
+    private int gridResolution = 0;
+    private final OverlapEngine overlapEngine = new OverlapEngine();
+
+    /**
+     * Estimates the overlap on a grid with the given number of cells along
+     * its longer side, instead of computing it exactly.
+     * @param gridResolution the number of cells, or 0 for exact overlaps
+     * @see RasterOverlap
+     */
+    public void setGridResolution(int gridResolution) {
+        this.gridResolution = Math.max(0, gridResolution);
+    }
 
     public double match(Geometry target, Geometry candidate) {
+        double candidateArea = candidate.getArea();
+        return toScore(overlapEngine.intersectionArea(target, candidate, candidateArea,
+            gridResolution), target.getArea(), candidateArea);
+    }
+
+    /**
+     * Takes the two areas from the features, which keep them, so only the
+     * intersection is computed for each pair.
+     */
+    @Override
+    public double score(Feature target, Feature candidate, double score) {
+        double candidateArea = FeatureUtil.getArea(candidate);
+        return toScore(overlapEngine.intersectionArea(target.getGeometry(),
+            candidate.getGeometry(), candidateArea, gridResolution),
+            FeatureUtil.getArea(target), candidateArea);
+    }
+
+    @Override
+    public void targetDone() {
+        overlapEngine.clear();
+    }
+
+    private double toScore(double intersectionArea, double targetArea, double candidateArea) {
         //Impose the min to curb roundoff error in exact matches (a situation which
         //arose during testing (identical datasets)) [Jon Aquino]
-        return Math.min(1, (2 * target.intersection(candidate).getArea())
-            / (target.getArea() + candidate.getArea()));
+        return Math.min(1, (2 * intersectionArea) / (targetArea + candidateArea));
     }
 }
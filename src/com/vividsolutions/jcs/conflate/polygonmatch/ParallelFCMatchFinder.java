@@ -0,0 +1,179 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureMap;
+import com.vividsolutions.jump.task.TaskMonitor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Applies a FeatureMatcher to each item in a FeatureCollection, like
+ * BasicFCMatchFinder, but splits the targets into chunks which are scored
+ * concurrently on a pool of worker threads.
+ * <P>
+ * The FeatureMatcher will be called from several threads at once, so it
+ * (and every matcher it is composed of) must be safe for concurrent use.
+ * Progress and cancellation are only handled on the calling thread, as each
+ * chunk completes. The returned map iterates over the targets in the order of
+ * the target collection, whatever order the chunks finish in.
+ */
+public class ParallelFCMatchFinder implements FCMatchFinder {
+
+    /**
+     * Number of targets handed to a worker at a time. Small enough to keep
+     * the threads evenly loaded and the progress reports frequent.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+
+    private FeatureMatcher matcher;
+    private int threadCount;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Creates a ParallelFCMatchFinder that uses one thread per available
+     * processor.
+     * @param matcher typically a composite of other FeatureMatchers
+     */
+    public ParallelFCMatchFinder(FeatureMatcher matcher) {
+        this(matcher, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a ParallelFCMatchFinder that uses the given FeatureMatcher.
+     * @param matcher typically a composite of other FeatureMatchers
+     * @param threadCount the number of worker threads to score targets on
+     */
+    public ParallelFCMatchFinder(FeatureMatcher matcher, int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threadCount);
+        }
+        this.matcher = matcher;
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of targets scored by a worker at a time.
+     * @param chunkSize the number of targets per chunk, at least 1
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public Map match(
+        FeatureCollection targetFC,
+        final FeatureCollection candidateFC,
+        final TaskMonitor monitor) {
+        monitor.allowCancellationRequests();
+        monitor.report("Finding matches");
+        FeatureMap map = new FeatureMap(true);
+        List targets = targetFC.getFeatures();
+        int totalFeatures = targets.size();
+        if (totalFeatures == 0) {
+            return map;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(threadCount, (totalFeatures + chunkSize - 1) / chunkSize));
+        try {
+            CompletionService completionService =
+                new ExecutorCompletionService(executor);
+            List futures = new ArrayList();
+            for (int start = 0; start < totalFeatures; start += chunkSize) {
+                final int chunkStart = start;
+                final List chunk = targets.subList(
+                    start, Math.min(start + chunkSize, totalFeatures));
+                futures.add(completionService.submit(new Callable() {
+                    @Override
+                    public Object call() {
+                        return matchChunk(chunkStart, chunk, candidateFC, monitor);
+                    }
+                }));
+            }
+            Matches[] targetMatches = new Matches[totalFeatures];
+            int featuresProcessed = 0;
+            for (int i = 0; i < futures.size() && !monitor.isCancelRequested(); i++) {
+                ChunkResult result = (ChunkResult) take(completionService);
+                System.arraycopy(result.matches, 0, targetMatches, result.start, result.size);
+                featuresProcessed += result.size;
+                monitor.report(featuresProcessed, totalFeatures, "features");
+            }
+            if (monitor.isCancelRequested()) {
+                for (int i = 0; i < futures.size(); i++) {
+                    ((Future) futures.get(i)).cancel(false);
+                }
+            }
+            for (int i = 0; i < totalFeatures; i++) {
+                if (targetMatches[i] != null) {
+                    map.put(targets.get(i), targetMatches[i]);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return map;
+    }
+
+    private ChunkResult matchChunk(
+        int start,
+        List chunk,
+        FeatureCollection candidateFC,
+        TaskMonitor monitor) {
+        ChunkResult result = new ChunkResult(start, chunk.size());
+        for (int i = 0; i < chunk.size() && !monitor.isCancelRequested(); i++) {
+            Feature target = (Feature) chunk.get(i);
+            result.matches[i] = matcher.match(target, candidateFC);
+            result.size++;
+        }
+        return result;
+    }
+
+    private Object take(CompletionService completionService) {
+        try {
+            return completionService.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * The matches found for one chunk of targets, starting at the given index
+     * of the target list. Fewer than all the targets may have been scored if
+     * cancellation was requested part way through.
+     */
+    private static class ChunkResult {
+        private int start;
+        private Matches[] matches;
+        private int size = 0;
+
+        public ChunkResult(int start, int capacity) {
+            this.start = start;
+            matches = new Matches[capacity];
+        }
+    }
+}
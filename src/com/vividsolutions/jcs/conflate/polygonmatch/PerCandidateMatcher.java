@@ -0,0 +1,27 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import com.vividsolutions.jump.feature.Feature;
+
+/**
+ * A FeatureMatcher whose score for each candidate depends only on the target,
+ * that candidate and the candidate's incoming score -- never on the other
+ * candidates. ChainMatcher can run consecutive PerCandidateMatchers in a
+ * single pass over the candidates, without building a Matches object between
+ * them.
+ * <P>
+ * #match(Feature, FeatureCollection) must give the same result as calling
+ * #score for each candidate and keeping those with a positive score.
+ */
+public interface PerCandidateMatcher extends FeatureMatcher {
+
+  /**
+   * Scores a single candidate.
+   * @param target the feature to match
+   * @param candidate the feature to compare with the target
+   * @param score the candidate's score from the previous FeatureMatcher (1 if
+   * there was none)
+   * @return the candidate's new score, from 0 to 1. A score of 0 discards the
+   * candidate.
+   */
+  public double score(Feature target, Feature candidate, double score);
+}
@@ -0,0 +1,127 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+
+/**
+ * Estimates the area of intersection of two polygonal geometries by
+ * rasterising both onto a shared grid of square cells and counting the cells
+ * inside both, using bit operations. A cell counts as inside a geometry if
+ * its centre is (even-odd rule, so holes are handled).
+ * <p>
+ * The grid covers the intersection of the two envelopes, outside which there
+ * can be no overlap, and has the given number of cells along its longer side.
+ * The error comes only from cells on the boundaries, so it shrinks with the
+ * cell size. On the building footprints of OverlapAccuracyReport (in the test
+ * sources), 64 cells gave overlap scores 0.0009 from the exact ones on
+ * average, 0.0074 at the 99th percentile and 0.03 at worst. Lines and points
+ * have no area.
+ */
+public class RasterOverlap {
+    private RasterOverlap() {
+    }
+
+    /**
+     * @param resolution the number of cells along the longer side of the grid
+     * @return the estimated area of the intersection
+     */
+    public static double intersectionArea(Geometry a, Geometry b, int resolution) {
+        Envelope env = a.getEnvelopeInternal().intersection(b.getEnvelopeInternal());
+        if (env.isNull() || env.getWidth() == 0 || env.getHeight() == 0) {
+            return 0;
+        }
+        double cellSize = Math.max(env.getWidth(), env.getHeight()) / resolution;
+        int columns = Math.max(1, (int) Math.ceil(env.getWidth() / cellSize));
+        int rows = Math.max(1, (int) Math.ceil(env.getHeight() / cellSize));
+        double[] edgesA = edges(a);
+        double[] edgesB = edges(b);
+        double[] crossings = new double[Math.max(edgesA.length, edgesB.length) / 4];
+        long[] rowA = new long[(columns + 63) / 64];
+        long[] rowB = new long[rowA.length];
+        long count = 0;
+        for (int r = 0; r < rows; r++) {
+            double y = env.getMinY() + (r + 0.5) * cellSize;
+            fillRow(edgesA, y, env.getMinX(), cellSize, columns, crossings, rowA);
+            fillRow(edgesB, y, env.getMinX(), cellSize, columns, crossings, rowB);
+            for (int w = 0; w < rowA.length; w++) {
+                count += Long.bitCount(rowA[w] & rowB[w]);
+            }
+        }
+        return count * cellSize * cellSize;
+    }
+
+    /**
+     * Sets the bits of the cells in the row whose centres are inside the
+     * rings.
+     */
+    private static void fillRow(double[] edges, double y, double minX, double cellSize,
+            int columns, double[] crossings, long[] row) {
+        Arrays.fill(row, 0);
+        int n = 0;
+        for (int e = 0; e < edges.length; e += 4) {
+            double y0 = edges[e + 1];
+            double y1 = edges[e + 3];
+            if ((y0 <= y) != (y1 <= y)) {
+                crossings[n++] = edges[e] + (y - y0) * (edges[e + 2] - edges[e]) / (y1 - y0);
+            }
+        }
+        Arrays.sort(crossings, 0, n);
+        for (int i = 0; i + 1 < n; i += 2) {
+            //The cells whose centres lie in [crossings[i], crossings[i + 1])
+            int first = Math.max(0, (int) Math.ceil((crossings[i] - minX) / cellSize - 0.5));
+            int end = Math.min(columns, (int) Math.ceil((crossings[i + 1] - minX) / cellSize - 0.5));
+            for (int c = first; c < end; c++) {
+                row[c >>> 6] |= 1L << (c & 63);
+            }
+        }
+    }
+
+    /**
+     * @return x0, y0, x1, y1 of each edge of each polygon ring
+     */
+    private static double[] edges(Geometry geometry) {
+        int count = 0;
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            Geometry part = geometry.getGeometryN(i);
+            if (part instanceof Polygon) {
+                count += part.getNumPoints();
+            }
+        }
+        double[] edges = new double[4 * count];
+        int e = 0;
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            Geometry part = geometry.getGeometryN(i);
+            if (!(part instanceof Polygon)) {
+                continue;
+            }
+            Polygon polygon = (Polygon) part;
+            e = addEdges(polygon.getExteriorRing(), edges, e);
+            for (int h = 0; h < polygon.getNumInteriorRing(); h++) {
+                e = addEdges(polygon.getInteriorRingN(h), edges, e);
+            }
+        }
+        return e == edges.length ? edges : copyOf(edges, e);
+    }
+
+    private static int addEdges(LineString ring, double[] edges, int e) {
+        CoordinateSequence seq = ring.getCoordinateSequence();
+        for (int i = 0; i < seq.size() - 1; i++) {
+            edges[e++] = seq.getX(i);
+            edges[e++] = seq.getY(i);
+            edges[e++] = seq.getX(i + 1);
+            edges[e++] = seq.getY(i + 1);
+        }
+        return e;
+    }
+
+    private static double[] copyOf(double[] array, int length) {
+        double[] copy = new double[length];
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+}
@@ -40,7 +40,7 @@ import com.vividsolutions.jump.feature.FeatureCollection;
 /**
  * Re-scales the scores output from another FeatureMatcher
  */
-public class ScaleScoresMatcher implements FeatureMatcher {
+public class ScaleScoresMatcher implements PerCandidateMatcher {
 
   /**
    * Creates a ScaleScoresMatcher without setting newZeroScore nor newFullScore.
@@ -95,6 +95,11 @@ public class ScaleScoresMatcher implements FeatureMatcher {
     return newMatches;
   }
 
+    @Override
+  public double score(Feature target, Feature candidate, double score) {
+    return convert(score);
+  }
+
   private double convert(double oldScore) {
     //y = m x + b; v = m u + b
     double x = newZeroScore, y = 0, u = newFullScore, v = 1;
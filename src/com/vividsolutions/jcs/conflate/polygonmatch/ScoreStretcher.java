@@ -40,7 +40,7 @@ import com.vividsolutions.jump.feature.FeatureCollection;
 /**
  * Re-scales the scores output from another FeatureMatcher
  */
-public class ScoreStretcher implements FeatureMatcher {
+public class ScoreStretcher implements PerCandidateMatcher {
 
   /**
    * Creates a StretchFilter with the given control points.
@@ -72,6 +72,11 @@ public class ScoreStretcher implements FeatureMatcher {
     return newMatches;
   }
 
+    @Override
+  public double score(Feature target, Feature candidate, double score) {
+    return convert(score);
+  }
+
   private double convert(double oldScore) {
     //y = m x + b; v = m u + b
     double x = minScore, y = 0, u = maxScore, v = 1;
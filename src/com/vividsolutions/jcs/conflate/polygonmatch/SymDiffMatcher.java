@@ -35,15 +35,30 @@
 package com.vividsolutions.jcs.conflate.polygonmatch;
 
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureUtil;
 
 /**
  * Uses symmetric difference as the criterion for determining match scores.
  */
-public class SymDiffMatcher extends IndependentCandidateMatcher {
+public class SymDiffMatcher extends IndependentCandidateMatcher
+    implements TargetCachingMatcher {
+  private int gridResolution = 0;
+  private final OverlapEngine overlapEngine = new OverlapEngine();
 
   public SymDiffMatcher() {
   }
 
+  /**
+   * Estimates the symmetric difference on a grid with the given number of
+   * cells along its longer side, instead of computing it exactly.
+   * @param gridResolution the number of cells, or 0 for exact differences
+   * @see RasterOverlap
+   */
+  public void setGridResolution(int gridResolution) {
+    this.gridResolution = Math.max(0, gridResolution);
+  }
+
   /**
    * The score is a linear function of the symmetric difference: 1 if the shapes perfectly
    * overlap; 0 if the shapes do not overlap at all.
@@ -52,13 +67,40 @@ public class SymDiffMatcher extends IndependentCandidateMatcher {
    * @return candidates with a score greater than 0 (typically all the candidates).
    */
   public double match(Geometry target, Geometry candidate) {
-    Geometry targetGeom = (Geometry) target.clone();
-    Geometry candidateGeom = (Geometry) candidate.clone();
-    if (targetGeom.isEmpty() || candidateGeom.isEmpty()) {
+    if (target.isEmpty() || candidate.isEmpty()) {
       return 0; //avoid div by 0 in centre-of-mass calc [Jon Aquino]
     }
-    return MatcherUtil.toScoreFromSymDiffArea(
-        targetGeom.getArea(), candidateGeom.getArea(),
-        targetGeom.symDifference(candidateGeom).getArea());
+    return toScore(target, target.getArea(), candidate, candidate.getArea());
+  }
+
+  /**
+   * Takes the two areas from the features, which keep them.
+   */
+  @Override
+  public double score(Feature target, Feature candidate, double score) {
+    Geometry targetGeom = target.getGeometry();
+    Geometry candidateGeom = candidate.getGeometry();
+    if (targetGeom.isEmpty() || candidateGeom.isEmpty()) {
+      return 0;
+    }
+    return toScore(targetGeom, FeatureUtil.getArea(target),
+        candidateGeom, FeatureUtil.getArea(candidate));
+  }
+
+  @Override
+  public void targetDone() {
+    overlapEngine.clear();
+  }
+
+  /**
+   * Neither geometry is changed, so they need not be cloned; the symmetric
+   * difference area is derived from the intersection area (see OverlapEngine).
+   */
+  private double toScore(Geometry target, double targetArea,
+      Geometry candidate, double candidateArea) {
+    double intersectionArea = overlapEngine.intersectionArea(target, candidate,
+        candidateArea, gridResolution);
+    return MatcherUtil.toScoreFromSymDiffArea(targetArea, candidateArea,
+        OverlapEngine.symDifferenceArea(targetArea, candidateArea, intersectionArea));
   }
 }
@@ -0,0 +1,17 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+/**
+ * A PerCandidateMatcher which keeps something about the current target
+ * between calls of #score, such as a prepared or indexed target geometry,
+ * because candidates are scored one target at a time. Whatever scores the
+ * candidates of a target one by one (IndependentCandidateMatcher#match,
+ * ChainMatcher in fused mode) calls #targetDone once it has scored them all,
+ * so that the target is not kept alive by a long-lived thread.
+ */
+public interface TargetCachingMatcher extends PerCandidateMatcher {
+
+  /**
+   * Drops whatever the calling thread keeps about the last target.
+   */
+  public void targetDone();
+}
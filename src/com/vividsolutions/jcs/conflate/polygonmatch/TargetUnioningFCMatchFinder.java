@@ -91,8 +91,7 @@ public class TargetUnioningFCMatchFinder implements FCMatchFinder {
         targetToMatchesMap.putAll(filteredTargetToMatchesMap);
         return targetToMatchesMap;
     }
-    private List lastTargetConstituents;
-    private List lastUnionIDs;
+    private Map lastTargetConstituentToUnionIDMap;
     private void createUnionIDs(final Map compositeTargetFeatureToMatchesMap, TaskMonitor monitor) {
         monitor.report("Creating union IDs");
         ArrayList compositeTargets = new ArrayList(compositeTargetFeatureToMatchesMap.keySet());
@@ -104,8 +103,7 @@ public class TargetUnioningFCMatchFinder implements FCMatchFinder {
                 return s1 < s2 ? -1 : s1 > s2 ? 1 : 0;
             }
         });
-        lastTargetConstituents = new ArrayList();
-        lastUnionIDs = new ArrayList();
+        lastTargetConstituentToUnionIDMap = new FeatureMap();
         int unionID = 0;
         for (int i = 0; i < compositeTargets.size(); i++) {
             monitor.report(i+1, compositeTargets.size(), "unions");
@@ -116,8 +114,10 @@ public class TargetUnioningFCMatchFinder implements FCMatchFinder {
             unionID++;
             for (Iterator j = compositeTarget.getFeatures().iterator(); j.hasNext(); ) {
                 Feature targetConstituent = (Feature) j.next();
-                lastTargetConstituents.add(targetConstituent);
-                lastUnionIDs.add(new Integer(unionID));
+                //Keep the first union ID given to a constituent
+                if (!lastTargetConstituentToUnionIDMap.containsKey(targetConstituent)) {
+                    lastTargetConstituentToUnionIDMap.put(targetConstituent, new Integer(unionID));
+                }
             }
         }
     }
@@ -139,7 +139,10 @@ public class TargetUnioningFCMatchFinder implements FCMatchFinder {
         Map compositeTargetToMatchesMap,
         FeatureSchema candidateSchema,
         TaskMonitor monitor) {
-        ArrayList targetConstituentsEncountered = new ArrayList();
+        //Identity set, so that checking each constituent is O(1) rather than a
+        //scan of every constituent encountered so far
+        Set targetConstituentsEncountered =
+            Collections.newSetFromMap(new IdentityHashMap());
         ArrayList compositeTargets = new ArrayList();
         ArrayList candidates = new ArrayList();
         ArrayList scores = new ArrayList();
@@ -164,7 +167,7 @@ public class TargetUnioningFCMatchFinder implements FCMatchFinder {
             scores.add(new Double(match.getScore()));
             targetConstituentsEncountered.addAll(((CompositeFeature) match.getTarget()).getFeatures());
         }
-        Map newMap = new HashMap();
+        Map newMap = new FeatureMap(true);
         for (int i = 0; i < compositeTargets.size(); i++) {
             Matches matches = new Matches(candidateSchema);
             matches.add(
@@ -176,7 +179,7 @@ public class TargetUnioningFCMatchFinder implements FCMatchFinder {
     }
     private List featuresWithCommonEdge(Feature feature, FeatureCollection fc) {
         ArrayList featuresWithCommonEdge = new ArrayList();
-        List candidates = fc.query(feature.getGeometry().getEnvelopeInternal());
+        List candidates = fc.query(FeatureUtil.getEnvelope(feature));
         for (Iterator i = candidates.iterator(); i.hasNext();) {
             Feature candidate = (Feature) i.next();
             if (feature == candidate
@@ -236,7 +239,7 @@ public class TargetUnioningFCMatchFinder implements FCMatchFinder {
         monitor.report("Splitting composites");
         int compositesProcessed = 0;
         int totalComposites = compositeToMatchesMap.size();
-        Map newMap = new HashMap();
+        Map newMap = new FeatureMap(true);
         for (Iterator i = compositeToMatchesMap.keySet().iterator();
             i.hasNext() && !monitor.isCancelRequested();
             ) {
@@ -321,8 +324,6 @@ public class TargetUnioningFCMatchFinder implements FCMatchFinder {
         fc.addAll(features);
     }
     public Integer getUnionID(Feature target) {
-        int i = lastTargetConstituents.indexOf(target);
-        if (i == -1) { return null; }
-        return (Integer)lastUnionIDs.get(i);
+        return (Integer) lastTargetConstituentToUnionIDMap.get(target);
     }
 }
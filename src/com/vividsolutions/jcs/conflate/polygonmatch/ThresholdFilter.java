@@ -40,7 +40,7 @@ import com.vividsolutions.jump.feature.FeatureCollection;
 /**
  * Filters out shapes with a score below a given value.
  */
-public class ThresholdFilter implements FeatureMatcher {
+public class ThresholdFilter implements PerCandidateMatcher {
 
   /**
    * Creates a ThresholdFilter with the given minimum score.
@@ -65,10 +65,17 @@ public class ThresholdFilter implements FeatureMatcher {
     Matches survivors = new Matches(candidates.getFeatureSchema());
     Matches allMatches = (Matches) candidates;
     for (int i = 0; i < allMatches.size(); i++) {
-      if (allMatches.getScore(i) >= minScore) {
-        survivors.add(allMatches.getFeature(i), allMatches.getScore(i));
-      }
+      survivors.add(allMatches.getFeature(i),
+          score(target, allMatches.getFeature(i), allMatches.getScore(i)));
     }
     return survivors;
   }
+
+  /**
+   * @return the score unchanged, or 0 if it is below the threshold
+   */
+    @Override
+  public double score(Feature target, Feature candidate, double score) {
+    return score >= minScore ? score : 0;
+  }
 }
@@ -37,8 +37,8 @@ package com.vividsolutions.jcs.conflate.polygonmatch;
 import com.vividsolutions.jts.util.Assert;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureMap;
 import com.vividsolutions.jump.task.TaskMonitor;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -102,7 +102,7 @@ public class TopMatchDisambiguatingFCMatchFinder implements FCMatchFinder {
         TaskMonitor monitor) {
         int featuresProcessed = 0;
         int totalFeatures = featureToMatchesMap1.size();
-        Map commonMatches = new HashMap();
+        Map commonMatches = new FeatureMap(true);
         for (Iterator i = featureToMatchesMap1.keySet().iterator();
             i.hasNext() && !monitor.isCancelRequested();
             ) {
@@ -125,7 +125,7 @@ public class TopMatchDisambiguatingFCMatchFinder implements FCMatchFinder {
     private Map filterMatches(Map featureToMatchesMap, TaskMonitor monitor) {
         int featuresProcessed = 0;
         int totalFeatures = featureToMatchesMap.size();
-        HashMap newMap = new HashMap();
+        FeatureMap newMap = new FeatureMap(true);
         if (featureToMatchesMap.isEmpty()) {
             return newMap;
         }
@@ -149,7 +149,7 @@ public class TopMatchDisambiguatingFCMatchFinder implements FCMatchFinder {
     protected Map invert(Map featureToMatchesMap, TaskMonitor monitor) {
         int featuresProcessed = 0;
         int totalFeatures = featureToMatchesMap.size();
-        HashMap newMap = new HashMap();
+        FeatureMap newMap = new FeatureMap(true);
         if (featureToMatchesMap.isEmpty()) {
             return newMap;
         }
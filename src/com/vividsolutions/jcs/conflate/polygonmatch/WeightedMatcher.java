@@ -37,11 +37,11 @@ package com.vividsolutions.jcs.conflate.polygonmatch;
 import com.vividsolutions.jts.util.Assert;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureMap;
 import com.vividsolutions.jump.feature.FeatureSchema;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * Runs multiple FeatureMatchers, and combines their scores using a weighted
@@ -115,7 +115,7 @@ public class WeightedMatcher implements FeatureMatcher {
   }
 
   private Map featureToScoreMap(Map matcherToMatchesMap) {
-    TreeMap featureToScoreMap = new TreeMap();
+    FeatureMap featureToScoreMap = new FeatureMap(true);
     for (Iterator i = matcherToMatchesMap.keySet().iterator(); i.hasNext(); ) {
       FeatureMatcher matcher = (FeatureMatcher) i.next();
       Matches matches = (Matches) matcherToMatchesMap.get(matcher);
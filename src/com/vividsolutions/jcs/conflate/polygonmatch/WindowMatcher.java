@@ -37,13 +37,14 @@ package com.vividsolutions.jcs.conflate.polygonmatch;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureUtil;
 import com.vividsolutions.jump.geom.EnvelopeUtil;
 
 /**
  * Quickly filters out shapes that lie outside a given distance from the feature's
  * envelope.
  */
-public class WindowMatcher implements FeatureMatcher {
+public class WindowMatcher implements PerCandidateMatcher, BoundedMatcher {
 
   /**
    * Creates a new WindowMatcher, with envelope buffering.
@@ -75,10 +76,28 @@ public class WindowMatcher implements FeatureMatcher {
    * @return the candidates with envelopes intersecting the window. Each will
    * have a score of 1.
    */
-    @Override
+  @Override
   public Matches match(Feature target, FeatureCollection candidates) {
-    Envelope window = new Envelope(target.getGeometry().getEnvelopeInternal());
-    window = EnvelopeUtil.expand(window, buffer);
-    return new Matches(candidates.getFeatureSchema(), candidates.query(window));
+    return new Matches(candidates.getFeatureSchema(),
+        candidates.query(searchEnvelope(target)));
+  }
+
+  /**
+   * @return the target's envelope, extended on each side by the buffer
+   */
+  @Override
+  public Envelope searchEnvelope(Feature target) {
+    Envelope window = new Envelope(FeatureUtil.getEnvelope(target));
+    return EnvelopeUtil.expand(window, buffer);
+  }
+
+  /**
+   * @return 1 if the candidate's envelope intersects the window; otherwise 0
+   */
+  @Override
+  public double score(Feature target, Feature candidate, double score) {
+    return EnvelopeUtil.intersectsExpanded(
+        FeatureUtil.getEnvelope(target), buffer,
+        FeatureUtil.getEnvelope(candidate)) ? 1 : 0;
   }
 }
@@ -2,6 +2,8 @@ package com.vividsolutions.jump.feature;
 
 import java.util.*;
 
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 
 /**
@@ -12,6 +14,7 @@ public abstract class AbstractBasicFeature implements Feature {
     
     private FeatureSchema schema;
     private int id;
+    private Measures measures;
     /**
      * A low-level accessor that is not normally used.
      */    
@@ -143,6 +146,70 @@ public abstract class AbstractBasicFeature implements Feature {
         return (Geometry) getAttribute(schema.getGeometryIndex());
     }
 
+    /**
+     *  Returns an envelope containing the spatial attribute. Subclasses which
+     *  create their geometry on demand may return a larger envelope, so as
+     *  not to create the geometry just to index or window it.
+     *
+     *@return    an envelope containing the feature's spatial attribute
+     */
+    public Envelope getEnvelope() {
+        return getGeometry().getEnvelopeInternal();
+    }
+
+    /**
+     *  Returns the centroid of the spatial attribute. It is computed once for
+     *  each geometry the feature has (see #getMeasures). Subclasses may
+     *  return a stored value instead.
+     *
+     *@return    the centroid, or null if the geometry is empty
+     */
+    public Coordinate getCentroid() {
+        Coordinate centroid = getMeasures().centroid;
+        return centroid == null ? null : new Coordinate(centroid);
+    }
+
+    /**
+     *  Returns the area of the spatial attribute, computed once for each
+     *  geometry the feature has.
+     */
+    public double getArea() {
+        return getMeasures().area;
+    }
+
+    /**
+     *  Returns the length (or perimeter) of the spatial attribute, computed
+     *  once for each geometry the feature has.
+     */
+    public double getLength() {
+        return getMeasures().length;
+    }
+
+    /**
+     *  Returns the measures of the current geometry, computing them if they
+     *  have not been since the geometry was last replaced. Only the values
+     *  are kept, so a feature which creates its geometry on demand need not
+     *  create it again once they are known.
+     */
+    private Measures getMeasures() {
+        Measures measures = this.measures;
+        if (measures == null) {
+            measures = new Measures(getGeometry());
+            this.measures = measures;
+        }
+        return measures;
+    }
+
+    /**
+     *  Forgets the measures of the previous geometry. Subclasses must call
+     *  this whenever the spatial attribute is replaced, e.g. from
+     *  #setAttribute and #setAttributes. A geometry changed in place is not
+     *  noticed, just as its cached envelope is not.
+     */
+    protected void geometryChanged() {
+        measures = null;
+    }
+
     /**
      *  Returns the feature's metadata
      *
@@ -183,4 +250,20 @@ public abstract class AbstractBasicFeature implements Feature {
     public int compareTo(Object o) {
         return getGeometry().compareTo(((Feature) o).getGeometry());
     }
+
+    /**
+     * Measures of one geometry. Immutable, so it can be shared between
+     * threads without locking.
+     */
+    private static final class Measures {
+        final Coordinate centroid;
+        final double area;
+        final double length;
+
+        Measures(Geometry geometry) {
+            centroid = geometry.isEmpty() ? null : geometry.getCentroid().getCoordinate();
+            area = geometry.getArea();
+            length = geometry.getLength();
+        }
+    }
 }
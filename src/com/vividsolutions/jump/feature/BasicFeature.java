@@ -66,6 +66,7 @@ public class BasicFeature extends AbstractBasicFeature {
      */
     public void setAttributes(Object[] attributes) {
         this.attributes = attributes;
+        geometryChanged();
     }
 
     /**
@@ -76,6 +77,8 @@ public class BasicFeature extends AbstractBasicFeature {
      */
     public void setAttribute(int attributeIndex, Object newAttribute) {
         attributes[attributeIndex] = newAttribute;
+        if (attributeIndex == getSchema().getGeometryIndex())
+            geometryChanged();
     }
 
     /**
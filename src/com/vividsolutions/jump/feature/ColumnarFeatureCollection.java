@@ -0,0 +1,1044 @@
+package com.vividsolutions.jump.feature;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jump.geom.DoubleArrayCoordinateSequence;
+import com.vividsolutions.jump.geom.DoubleBufferCoordinateSequence;
+
+/**
+ *  A FeatureCollection that stores its features column by column in primitive
+ *  arrays, rather than as Feature objects each with an attribute array and a
+ *  JTS Geometry:
+ *  <ul>
+ *  <li>envelopes, centroids, areas and lengths in packed double arrays
+ *  <li>the x and y values of all the coordinates in one shared double array,
+ *  with an offset array, and the shape of each geometry (types, part and ring
+ *  sizes) in a small int array
+ *  <li>non-spatial attribute values dictionary-encoded as ints, stored
+ *  sparsely as (attribute, value) pairs since most features only have a few
+ *  of the attributes
+ *  </ul>
+ *  The features returned are lightweight read-only views. There is exactly one
+ *  view per feature, so features can still be compared by identity. A view's
+ *  #getEnvelope, #getCentroid, #getArea and #getLength read the columns; its geometry is
+ *  built on demand over the shared coordinates (see
+ *  DoubleArrayCoordinateSequence), so ask for it only when it is needed. The
+ *  last few geometries built are kept, so asking the same view again returns
+ *  the same Geometry, and caches keyed on it (such as prepared targets) hit.
+ *  <p>
+ *  The coordinate column, which is by far the largest, can instead be kept
+ *  off the Java heap in a direct buffer (see DoubleBufferCoordinateSequence),
+ *  so that very large reference datasets do not need a larger heap and do
+ *  not add to garbage collection work.
+ *  <p>
+ *  Features can be added but not removed. #query is a linear scan of the
+ *  envelope column unless #buildIndex has been called since the last add.
+ *  Reads may run on several threads at once, but not at the same time as an
+ *  add.
+ *  <p>
+ *  The whole collection, index included, can be saved with #write and opened
+ *  again with #open. Opening copies the small columns into arrays and leaves
+ *  the coordinates and the index in the memory-mapped file, so no geometry
+ *  is parsed or converted and only the parts used are read from disk.
+ */
+public class ColumnarFeatureCollection implements FeatureCollection {
+    private static final int POINT = 0;
+    private static final int LINESTRING = 1;
+    private static final int LINEARRING = 2;
+    private static final int POLYGON = 3;
+    private static final int MULTIPOINT = 4;
+    private static final int MULTILINESTRING = 5;
+    private static final int MULTIPOLYGON = 6;
+    private static final int GEOMETRYCOLLECTION = 7;
+
+    private static final int FILE_MAGIC = 0x4643534A;
+    private static final int FILE_VERSION = 2;
+
+    private FeatureSchema featureSchema;
+    private GeometryFactory factory;
+    private int size = 0;
+    private Envelope envelope = new Envelope();
+
+    private int[] ids = new int[16];
+    /** A key of the caller's choice for each feature, see #add(Feature, long) */
+    private long[] keys = new long[16];
+    /** minX, maxX, minY, maxY of each feature; NaN if the geometry is empty */
+    private double[] envelopes = new double[64];
+    /** x, y of each feature's centroid; NaN if the geometry is empty */
+    private double[] centroids = new double[32];
+    /** area, length of each feature */
+    private double[] measures = new double[32];
+
+    /** Null if the coordinates are kept in #coordinateBuffer */
+    private double[] coordinates;
+    private DoubleBuffer coordinateBuffer;
+    private int coordinateCount = 0;
+    private int[] coordinateOffsets = new int[17];
+
+    private int[] structure = new int[64];
+    private int structureLength = 0;
+    private int[] structureOffsets = new int[17];
+
+    private int[] tagAttributes = new int[64];
+    private int[] tagValues = new int[64];
+    private int tagCount = 0;
+    private int[] tagOffsets = new int[17];
+    private ArrayList values = new ArrayList();
+    /** Null until needed after #open */
+    private HashMap valueCodes = new HashMap();
+
+    /** Null if not built, or if features have been added since */
+    private PackedSTRtree index;
+
+    /** Created as features are added, so that reads need no locking */
+    private FeatureView[] views = new FeatureView[16];
+
+    /**
+     * The most recently decoded geometries, in slots chosen by feature index,
+     * so that a feature asked for its geometry again and again (such as the
+     * target of a matcher) returns the same Geometry and does not decode it
+     * each time. Entries are immutable, so reads need no locking; a lost
+     * race only costs a decode.
+     */
+    private static final int DECODED_SLOTS = 64;
+    private Decoded[] decoded = new Decoded[DECODED_SLOTS];
+
+    public ColumnarFeatureCollection(FeatureSchema featureSchema) {
+        this(featureSchema, new GeometryFactory());
+    }
+
+    /**
+     * @param factory used to build the geometries of the views
+     */
+    public ColumnarFeatureCollection(FeatureSchema featureSchema, GeometryFactory factory) {
+        this(featureSchema, factory, false);
+    }
+
+    /**
+     * @param factory used to build the geometries of the views
+     * @param offHeap whether to keep the coordinates in a direct buffer
+     * rather than in a double array
+     */
+    public ColumnarFeatureCollection(FeatureSchema featureSchema, GeometryFactory factory,
+        boolean offHeap) {
+        this.featureSchema = featureSchema;
+        this.factory = factory;
+        if (offHeap) {
+            coordinateBuffer = allocateDirect(256);
+        } else {
+            coordinates = new double[256];
+        }
+    }
+
+    /**
+     * Creates a ColumnarFeatureCollection holding copies of the features of
+     * the given collection, in the same order.
+     */
+    public ColumnarFeatureCollection(FeatureCollection fc) {
+        this(fc, false);
+    }
+
+    /**
+     * Creates a ColumnarFeatureCollection holding copies of the features of
+     * the given collection, in the same order.
+     * @param offHeap whether to keep the coordinates in a direct buffer
+     */
+    public ColumnarFeatureCollection(FeatureCollection fc, boolean offHeap) {
+        this(fc.getFeatureSchema(), new GeometryFactory(), offHeap);
+        addAll(fc.getFeatures());
+        trimToSize();
+    }
+
+    public FeatureSchema getFeatureSchema() {
+        return featureSchema;
+    }
+
+    public Envelope getEnvelope() {
+        return envelope;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the (read-only) feature at the given index
+     */
+    public Feature getFeature(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return views[index];
+    }
+
+    public List getFeatures() {
+        return new AbstractList() {
+            public Object get(int index) {
+                return getFeature(index);
+            }
+
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public Iterator iterator() {
+        return getFeatures().iterator();
+    }
+
+    public List query(Envelope env) {
+        PackedSTRtree index = this.index;
+        if (index != null) {
+            int[] found = index.query(env);
+            List result = new ArrayList(found.length);
+            for (int i = 0; i < found.length; i++) {
+                result.add(getFeature(found[i]));
+            }
+            return result;
+        }
+        List result = new ArrayList();
+        for (int i = 0; i < size; i++) {
+            int e = 4 * i;
+            //Compare with the columns so that no objects are created for misses
+            if (!Double.isNaN(envelopes[e])
+                && envelopes[e] <= env.getMaxX() && envelopes[e + 1] >= env.getMinX()
+                && envelopes[e + 2] <= env.getMaxY() && envelopes[e + 3] >= env.getMinY()) {
+                result.add(getFeature(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Appends a copy of the feature. Attributes are matched to this
+     * collection's schema by name; attributes the schema does not have are
+     * dropped.
+     */
+    public void add(Feature feature) {
+        add(feature, 0);
+    }
+
+    /**
+     * Appends a copy of the feature, as #add(Feature) does, with a key which
+     * is kept with it, for example to find the feature's source again.
+     */
+    public synchronized void add(Feature feature, long key) {
+        ensureFeatureCapacity(size + 1);
+        int i = size;
+        index = null;
+        ids[i] = feature.getID();
+        keys[i] = key;
+
+        Geometry geometry = feature.getGeometry();
+        Envelope featureEnvelope = geometry.getEnvelopeInternal();
+        if (featureEnvelope.isNull()) {
+            Arrays.fill(envelopes, 4 * i, 4 * i + 4, Double.NaN);
+            centroids[2 * i] = centroids[2 * i + 1] = Double.NaN;
+        } else {
+            envelopes[4 * i] = featureEnvelope.getMinX();
+            envelopes[4 * i + 1] = featureEnvelope.getMaxX();
+            envelopes[4 * i + 2] = featureEnvelope.getMinY();
+            envelopes[4 * i + 3] = featureEnvelope.getMaxY();
+            Coordinate centroid = geometry.getCentroid().getCoordinate();
+            centroids[2 * i] = centroid.x;
+            centroids[2 * i + 1] = centroid.y;
+            envelope.expandToInclude(featureEnvelope);
+        }
+        measures[2 * i] = geometry.getArea();
+        measures[2 * i + 1] = geometry.getLength();
+
+        encode(geometry);
+        coordinateOffsets[i + 1] = coordinateCount;
+        structureOffsets[i + 1] = structureLength;
+
+        FeatureSchema schema = feature.getSchema();
+        for (int a = 0; a < featureSchema.getAttributeCount(); a++) {
+            if (a == featureSchema.getGeometryIndex()) {
+                continue;
+            }
+            Object value;
+            if (schema == featureSchema) {
+                value = feature.getAttribute(a);
+            } else if (schema.hasAttribute(featureSchema.getAttributeName(a))) {
+                value = feature.getAttribute(featureSchema.getAttributeName(a));
+            } else {
+                continue;
+            }
+            if (value != null) {
+                addTag(a, code(value));
+            }
+        }
+        tagOffsets[i + 1] = tagCount;
+        views[i] = new FeatureView(i);
+        size++;
+    }
+
+    public void addAll(Collection features) {
+        for (Iterator i = features.iterator(); i.hasNext();) {
+            add((Feature) i.next());
+        }
+    }
+
+    public void remove(Feature feature) {
+        throw new UnsupportedOperationException("Columnar store cannot be modified");
+    }
+
+    public void removeAll(Collection features) {
+        throw new UnsupportedOperationException("Columnar store cannot be modified");
+    }
+
+    public Collection remove(Envelope env) {
+        throw new UnsupportedOperationException("Columnar store cannot be modified");
+    }
+
+    public void clear() {
+        throw new UnsupportedOperationException("Columnar store cannot be modified");
+    }
+
+    /**
+     * Shrinks the columns to fit the features added so far, releasing the
+     * room left for further adds.
+     */
+    public synchronized void trimToSize() {
+        ids = copyOf(ids, size);
+        keys = copyOf(keys, size);
+        envelopes = copyOf(envelopes, 4 * size);
+        centroids = copyOf(centroids, 2 * size);
+        measures = copyOf(measures, 2 * size);
+        coordinateOffsets = copyOf(coordinateOffsets, size + 1);
+        structureOffsets = copyOf(structureOffsets, size + 1);
+        tagOffsets = copyOf(tagOffsets, size + 1);
+        FeatureView[] newViews = new FeatureView[size];
+        System.arraycopy(views, 0, newViews, 0, size);
+        views = newViews;
+        if (coordinateBuffer != null) {
+            coordinateBuffer = copyOf(coordinateBuffer, 2 * coordinateCount);
+        } else {
+            coordinates = copyOf(coordinates, 2 * coordinateCount);
+        }
+        structure = copyOf(structure, structureLength);
+        tagAttributes = copyOf(tagAttributes, tagCount);
+        tagValues = copyOf(tagValues, tagCount);
+        // the cached geometries use the old coordinates
+        decoded = new Decoded[DECODED_SLOTS];
+    }
+
+    /**
+     * @return the key the feature at the given index was added with
+     */
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * @return the envelope of the feature at the given index, read without
+     * building its geometry
+     */
+    public Envelope getEnvelope(int index) {
+        int e = 4 * index;
+        if (Double.isNaN(envelopes[e])) {
+            return new Envelope();
+        }
+        return new Envelope(envelopes[e], envelopes[e + 1], envelopes[e + 2], envelopes[e + 3]);
+    }
+
+    /**
+     * @return the number of coordinates in the geometry of the feature at the
+     * given index, read without building the geometry
+     */
+    public int getCoordinateCount(int index) {
+        return coordinateOffsets[index + 1] - coordinateOffsets[index];
+    }
+
+    /**
+     * Indexes the features added so far, so that #query need not scan them
+     * all. The index is dropped when another feature is added.
+     */
+    public synchronized void buildIndex(int nodeCapacity) {
+        index = new PackedSTRtree(envelopes, size, nodeCapacity);
+    }
+
+    /**
+     * Saves the collection, with its index if one has been built, for #open.
+     * Attribute values must be Strings, Integers, Longs or Doubles. All
+     * numbers are written little-endian.
+     */
+    public synchronized void write(File file) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+            if (!(value instanceof String || value instanceof Integer
+                || value instanceof Long || value instanceof Double)) {
+                throw new IllegalArgumentException("Cannot write attribute value of "
+                    + value.getClass());
+            }
+        }
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            ColumnWriter writer = new ColumnWriter(out.getChannel());
+            writer.putInt(FILE_MAGIC);
+            writer.putInt(FILE_VERSION);
+            writer.putInt(size);
+            writer.putInt(coordinateCount);
+            writer.putInt(structureLength);
+            writer.putInt(tagCount);
+            writer.putInt(values.size());
+            writer.putInt(featureSchema.getAttributeCount());
+            writer.putInt(index == null ? 0 : index.getNodeCapacity());
+            writer.putInt(index == null ? 0 : index.getLevelStarts().length);
+            if (envelope.isNull()) {
+                writer.putDoubles(new double[] { Double.NaN, Double.NaN, Double.NaN, Double.NaN }, 4);
+            } else {
+                writer.putDoubles(new double[] { envelope.getMinX(), envelope.getMaxX(),
+                    envelope.getMinY(), envelope.getMaxY() }, 4);
+            }
+            for (int a = 0; a < featureSchema.getAttributeCount(); a++) {
+                writer.putString(featureSchema.getAttributeName(a));
+                writer.putString(featureSchema.getAttributeType(a).toString());
+            }
+            writer.align();
+            writer.putLongs(keys, size);
+            writer.putDoubles(envelopes, 4 * size);
+            writer.putDoubles(centroids, 2 * size);
+            writer.putDoubles(measures, 2 * size);
+            writer.putInts(ids, size);
+            writer.putInts(coordinateOffsets, size + 1);
+            writer.putInts(structureOffsets, size + 1);
+            writer.putInts(tagOffsets, size + 1);
+            writer.putInts(structure, structureLength);
+            writer.putInts(tagAttributes, tagCount);
+            writer.putInts(tagValues, tagCount);
+            for (int i = 0; i < values.size(); i++) {
+                writer.putValue(values.get(i));
+            }
+            writer.align();
+            if (index != null) {
+                int[] levelStarts = index.getLevelStarts();
+                writer.putInts(levelStarts, levelStarts.length);
+                writer.align();
+                int nodeCount = levelStarts[levelStarts.length - 1];
+                DoubleBuffer bounds = index.getBounds();
+                for (int i = 0; i < 4 * nodeCount; i++) {
+                    writer.putDouble(bounds.get(i));
+                }
+                IntBuffer items = index.getItems();
+                for (int i = 0; i < levelStarts[1]; i++) {
+                    writer.putInt(items.get(i));
+                }
+                writer.align();
+            }
+            if (coordinateBuffer != null) {
+                for (int i = 0; i < 2 * coordinateCount; i++) {
+                    writer.putDouble(coordinateBuffer.get(i));
+                }
+            } else {
+                writer.putDoubles(coordinates, 2 * coordinateCount);
+            }
+            writer.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Opens a collection saved by #write. The coordinates and the index stay
+     * in the memory-mapped file, which must not be changed while the
+     * collection is in use, and must be smaller than 2 GB.
+     */
+    public static ColumnarFeatureCollection open(File file) throws IOException {
+        ByteBuffer buffer;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+        } finally {
+            in.close();
+        }
+        ColumnReader reader = new ColumnReader(buffer);
+        if (buffer.remaining() < 8 || reader.getInt() != FILE_MAGIC) {
+            throw new IOException("Not a columnar feature file: " + file);
+        }
+        int version = reader.getInt();
+        if (version != FILE_VERSION) {
+            throw new IOException("Unsupported columnar feature file version " + version + ": " + file);
+        }
+        int size = reader.getInt();
+        int coordinateCount = reader.getInt();
+        int structureLength = reader.getInt();
+        int tagCount = reader.getInt();
+        int valueCount = reader.getInt();
+        int attributeCount = reader.getInt();
+        int nodeCapacity = reader.getInt();
+        int levelCount = reader.getInt();
+        double[] envelope = reader.getDoubles(4);
+        FeatureSchema schema = new FeatureSchema();
+        for (int a = 0; a < attributeCount; a++) {
+            String name = reader.getString();
+            schema.addAttribute(name, AttributeType.toAttributeType(reader.getString()));
+        }
+
+        ColumnarFeatureCollection fc = new ColumnarFeatureCollection(schema, new GeometryFactory(), true);
+        fc.size = size;
+        if (!Double.isNaN(envelope[0])) {
+            fc.envelope = new Envelope(envelope[0], envelope[1], envelope[2], envelope[3]);
+        }
+        reader.align();
+        fc.keys = reader.getLongs(size);
+        fc.envelopes = reader.getDoubles(4 * size);
+        fc.centroids = reader.getDoubles(2 * size);
+        fc.measures = reader.getDoubles(2 * size);
+        fc.ids = reader.getInts(size);
+        fc.coordinateOffsets = reader.getInts(size + 1);
+        fc.structureOffsets = reader.getInts(size + 1);
+        fc.tagOffsets = reader.getInts(size + 1);
+        fc.structure = reader.getInts(structureLength);
+        fc.structureLength = structureLength;
+        fc.tagAttributes = reader.getInts(tagCount);
+        fc.tagValues = reader.getInts(tagCount);
+        fc.tagCount = tagCount;
+        fc.values = new ArrayList(valueCount);
+        for (int i = 0; i < valueCount; i++) {
+            fc.values.add(reader.getValue());
+        }
+        fc.valueCodes = null;
+        reader.align();
+        if (levelCount > 0) {
+            int[] levelStarts = reader.getInts(levelCount);
+            reader.align();
+            DoubleBuffer bounds = reader.mapDoubles(4 * levelStarts[levelCount - 1]);
+            IntBuffer items = reader.mapInts(levelStarts[1]);
+            reader.align();
+            fc.index = new PackedSTRtree(nodeCapacity, levelStarts, bounds, items);
+        }
+        fc.coordinateBuffer = reader.mapDoubles(2 * coordinateCount);
+        fc.coordinateCount = coordinateCount;
+        fc.views = new FeatureView[size];
+        for (int i = 0; i < size; i++) {
+            fc.views[i] = fc.new FeatureView(i);
+        }
+        return fc;
+    }
+
+    /**
+     * @return whether the coordinates are kept off the Java heap
+     */
+    public boolean isOffHeap() {
+        return coordinateBuffer != null;
+    }
+
+    /**
+     * @return the number of distinct attribute values stored
+     */
+    public int getValueCount() {
+        return values.size();
+    }
+
+    private void ensureFeatureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, 2 * ids.length);
+        ids = copyOf(ids, newCapacity);
+        keys = copyOf(keys, newCapacity);
+        FeatureView[] newViews = new FeatureView[newCapacity];
+        System.arraycopy(views, 0, newViews, 0, size);
+        views = newViews;
+        envelopes = copyOf(envelopes, 4 * newCapacity);
+        centroids = copyOf(centroids, 2 * newCapacity);
+        measures = copyOf(measures, 2 * newCapacity);
+        coordinateOffsets = copyOf(coordinateOffsets, newCapacity + 1);
+        structureOffsets = copyOf(structureOffsets, newCapacity + 1);
+        tagOffsets = copyOf(tagOffsets, newCapacity + 1);
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    private static long[] copyOf(long[] array, int length) {
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    private static double[] copyOf(double[] array, int length) {
+        double[] copy = new double[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    private static DoubleBuffer allocateDirect(int length) {
+        return ByteBuffer.allocateDirect(8 * length).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+    private DoubleBuffer copyOf(DoubleBuffer buffer, int length) {
+        DoubleBuffer copy = allocateDirect(length);
+        DoubleBuffer used = buffer.duplicate();
+        used.position(0);
+        used.limit(Math.min(2 * coordinateCount, length));
+        copy.put(used);
+        copy.clear();
+        return copy;
+    }
+
+    private int code(Object value) {
+        if (valueCodes == null) {
+            valueCodes = new HashMap();
+            for (int i = 0; i < values.size(); i++) {
+                valueCodes.put(values.get(i), Integer.valueOf(i));
+            }
+        }
+        Integer code = (Integer) valueCodes.get(value);
+        if (code == null) {
+            code = Integer.valueOf(values.size());
+            values.add(value);
+            valueCodes.put(value, code);
+        }
+        return code.intValue();
+    }
+
+    private void addTag(int attribute, int value) {
+        if (tagCount == tagAttributes.length) {
+            tagAttributes = copyOf(tagAttributes, Math.max(16, 2 * tagCount));
+            tagValues = copyOf(tagValues, Math.max(16, 2 * tagCount));
+        }
+        tagAttributes[tagCount] = attribute;
+        tagValues[tagCount] = value;
+        tagCount++;
+    }
+
+    private void addStructure(int value) {
+        if (structureLength == structure.length) {
+            structure = copyOf(structure, Math.max(16, 2 * structureLength));
+        }
+        structure[structureLength++] = value;
+    }
+
+    private void addCoordinates(CoordinateSequence sequence) {
+        int n = sequence.size();
+        if (coordinateBuffer != null) {
+            if (2 * (coordinateCount + n) > coordinateBuffer.capacity()) {
+                coordinateBuffer = copyOf(coordinateBuffer,
+                    Math.max(2 * (coordinateCount + n), 2 * coordinateBuffer.capacity()));
+            }
+            for (int i = 0; i < n; i++) {
+                coordinateBuffer.put(2 * coordinateCount, sequence.getX(i));
+                coordinateBuffer.put(2 * coordinateCount + 1, sequence.getY(i));
+                coordinateCount++;
+            }
+            addStructure(n);
+            return;
+        }
+        if (2 * (coordinateCount + n) > coordinates.length) {
+            coordinates = copyOf(coordinates, Math.max(2 * (coordinateCount + n), 2 * coordinates.length));
+        }
+        for (int i = 0; i < n; i++) {
+            coordinates[2 * coordinateCount] = sequence.getX(i);
+            coordinates[2 * coordinateCount + 1] = sequence.getY(i);
+            coordinateCount++;
+        }
+        addStructure(n);
+    }
+
+    /**
+     * Writes the type and part sizes of the geometry (in prefix order) to the
+     * structure column, and its coordinates to the coordinate column.
+     */
+    private void encode(Geometry geometry) {
+        if (geometry instanceof Point) {
+            addStructure(POINT);
+            addCoordinates(((Point) geometry).getCoordinateSequence());
+        } else if (geometry instanceof LinearRing) {
+            addStructure(LINEARRING);
+            addCoordinates(((LineString) geometry).getCoordinateSequence());
+        } else if (geometry instanceof LineString) {
+            addStructure(LINESTRING);
+            addCoordinates(((LineString) geometry).getCoordinateSequence());
+        } else if (geometry instanceof Polygon) {
+            Polygon polygon = (Polygon) geometry;
+            addStructure(POLYGON);
+            if (polygon.isEmpty()) {
+                addStructure(0);
+                return;
+            }
+            addStructure(1 + polygon.getNumInteriorRing());
+            addCoordinates(polygon.getExteriorRing().getCoordinateSequence());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                addCoordinates(polygon.getInteriorRingN(i).getCoordinateSequence());
+            }
+        } else {
+            if (geometry instanceof MultiPoint) {
+                addStructure(MULTIPOINT);
+            } else if (geometry instanceof MultiLineString) {
+                addStructure(MULTILINESTRING);
+            } else if (geometry instanceof MultiPolygon) {
+                addStructure(MULTIPOLYGON);
+            } else {
+                addStructure(GEOMETRYCOLLECTION);
+            }
+            addStructure(geometry.getNumGeometries());
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                encode(geometry.getGeometryN(i));
+            }
+        }
+    }
+
+    private Geometry decodeCached(int index) {
+        Decoded[] decoded = this.decoded;
+        int slot = index & (DECODED_SLOTS - 1);
+        Decoded entry = decoded[slot];
+        if (entry != null && entry.index == index) {
+            return entry.geometry;
+        }
+        Geometry geometry = decode(index);
+        decoded[slot] = new Decoded(index, geometry);
+        return geometry;
+    }
+
+    private Geometry decode(int index) {
+        int[] cursor = { structureOffsets[index], coordinateOffsets[index] };
+        return decode(cursor);
+    }
+
+    /**
+     * @param cursor the next positions in the structure and coordinate columns
+     */
+    private Geometry decode(int[] cursor) {
+        int type = structure[cursor[0]++];
+        switch (type) {
+        case POINT:
+            return factory.createPoint(nextSequence(cursor));
+        case LINESTRING:
+            return factory.createLineString(nextSequence(cursor));
+        case LINEARRING:
+            return factory.createLinearRing(nextSequence(cursor));
+        case POLYGON: {
+            int ringCount = structure[cursor[0]++];
+            if (ringCount == 0) {
+                return factory.createPolygon(null, null);
+            }
+            LinearRing shell = factory.createLinearRing(nextSequence(cursor));
+            LinearRing[] holes = new LinearRing[ringCount - 1];
+            for (int i = 0; i < holes.length; i++) {
+                holes[i] = factory.createLinearRing(nextSequence(cursor));
+            }
+            return factory.createPolygon(shell, holes);
+        }
+        default: {
+            int count = structure[cursor[0]++];
+            // created with the element type the factory expects, so no copy is needed
+            Geometry[] parts;
+            switch (type) {
+            case MULTIPOINT:
+                parts = new Point[count];
+                break;
+            case MULTILINESTRING:
+                parts = new LineString[count];
+                break;
+            case MULTIPOLYGON:
+                parts = new Polygon[count];
+                break;
+            default:
+                parts = new Geometry[count];
+            }
+            for (int i = 0; i < count; i++) {
+                parts[i] = decode(cursor);
+            }
+            switch (type) {
+            case MULTIPOINT:
+                return factory.createMultiPoint((Point[]) parts);
+            case MULTILINESTRING:
+                return factory.createMultiLineString((LineString[]) parts);
+            case MULTIPOLYGON:
+                return factory.createMultiPolygon((Polygon[]) parts);
+            default:
+                return factory.createGeometryCollection(parts);
+            }
+        }
+        }
+    }
+
+    private CoordinateSequence nextSequence(int[] cursor) {
+        int n = structure[cursor[0]++];
+        CoordinateSequence sequence = coordinateBuffer != null
+            ? new DoubleBufferCoordinateSequence(coordinateBuffer, 2 * cursor[1], n)
+            : new DoubleArrayCoordinateSequence(coordinates, 2 * cursor[1], n);
+        cursor[1] += n;
+        return sequence;
+    }
+
+    /**
+     * Writes values through a small buffer, keeping track of the position so
+     * that sections can be aligned for #open.
+     */
+    private static class ColumnWriter {
+        private FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private long position = 0;
+
+        public ColumnWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int length) throws IOException {
+            if (buffer.remaining() < length) {
+                flush();
+            }
+            position += length;
+        }
+
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        public void align() throws IOException {
+            while (position % 8 != 0) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        public void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        public void putDouble(double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        public void putInts(int[] array, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                putInt(array[i]);
+            }
+        }
+
+        public void putLongs(long[] array, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                ensure(8);
+                buffer.putLong(array[i]);
+            }
+        }
+
+        public void putDoubles(double[] array, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                putDouble(array[i]);
+            }
+        }
+
+        public void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes("UTF-8");
+            putInt(bytes.length);
+            for (int i = 0; i < bytes.length; i++) {
+                ensure(1);
+                buffer.put(bytes[i]);
+            }
+        }
+
+        public void putValue(Object value) throws IOException {
+            ensure(1);
+            if (value instanceof String) {
+                buffer.put((byte) 'S');
+                putString((String) value);
+            } else if (value instanceof Integer) {
+                buffer.put((byte) 'I');
+                putInt(((Integer) value).intValue());
+            } else if (value instanceof Long) {
+                buffer.put((byte) 'L');
+                ensure(8);
+                buffer.putLong(((Long) value).longValue());
+            } else {
+                buffer.put((byte) 'D');
+                putDouble(((Double) value).doubleValue());
+            }
+        }
+    }
+
+    /**
+     * Reads what a ColumnWriter wrote, copying small columns into arrays and
+     * mapping large ones.
+     */
+    private static class ColumnReader {
+        private ByteBuffer buffer;
+
+        public ColumnReader(ByteBuffer buffer) {
+            this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * @return a little-endian view of the rest of the buffer
+         */
+        private ByteBuffer rest() {
+            return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private void skip(int length) {
+            buffer.position(buffer.position() + length);
+        }
+
+        public void align() {
+            skip((8 - buffer.position() % 8) % 8);
+        }
+
+        public int getInt() {
+            return buffer.getInt();
+        }
+
+        public int[] getInts(int length) {
+            int[] array = new int[length];
+            rest().asIntBuffer().get(array);
+            skip(4 * length);
+            return array;
+        }
+
+        public long[] getLongs(int length) {
+            long[] array = new long[length];
+            rest().asLongBuffer().get(array);
+            skip(8 * length);
+            return array;
+        }
+
+        public double[] getDoubles(int length) {
+            double[] array = new double[length];
+            rest().asDoubleBuffer().get(array);
+            skip(8 * length);
+            return array;
+        }
+
+        public DoubleBuffer mapDoubles(int length) {
+            DoubleBuffer doubles = rest().asDoubleBuffer();
+            doubles.limit(length);
+            skip(8 * length);
+            return doubles.slice();
+        }
+
+        public IntBuffer mapInts(int length) {
+            IntBuffer ints = rest().asIntBuffer();
+            ints.limit(length);
+            skip(4 * length);
+            return ints.slice();
+        }
+
+        public String getString() throws IOException {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new String(bytes, "UTF-8");
+        }
+
+        public Object getValue() throws IOException {
+            byte type = buffer.get();
+            switch (type) {
+            case 'S':
+                return getString();
+            case 'I':
+                return Integer.valueOf(buffer.getInt());
+            case 'L':
+                return Long.valueOf(buffer.getLong());
+            case 'D':
+                return Double.valueOf(buffer.getDouble());
+            default:
+                throw new IOException("Unknown attribute value type " + type);
+            }
+        }
+    }
+
+    /**
+     * A read-only view of one feature of the collection.
+     */
+    private class FeatureView extends AbstractBasicFeature {
+        private int index;
+
+        public FeatureView(int index) {
+            super(featureSchema);
+            this.index = index;
+        }
+
+        public int getID() {
+            return ids[index];
+        }
+
+        public Object getAttribute(int i) {
+            if (i == featureSchema.getGeometryIndex()) {
+                return decodeCached(index);
+            }
+            for (int t = tagOffsets[index]; t < tagOffsets[index + 1]; t++) {
+                if (tagAttributes[t] == i) {
+                    return values.get(tagValues[t]);
+                }
+            }
+            return null;
+        }
+
+        public Object[] getAttributes() {
+            Object[] attributes = new Object[featureSchema.getAttributeCount()];
+            for (int t = tagOffsets[index]; t < tagOffsets[index + 1]; t++) {
+                attributes[tagAttributes[t]] = values.get(tagValues[t]);
+            }
+            if (featureSchema.getGeometryIndex() >= 0) {
+                attributes[featureSchema.getGeometryIndex()] = decodeCached(index);
+            }
+            return attributes;
+        }
+
+        public Envelope getEnvelope() {
+            return ColumnarFeatureCollection.this.getEnvelope(index);
+        }
+
+        public Coordinate getCentroid() {
+            if (Double.isNaN(centroids[2 * index])) {
+                return null;
+            }
+            return new Coordinate(centroids[2 * index], centroids[2 * index + 1]);
+        }
+
+        public double getArea() {
+            return measures[2 * index];
+        }
+
+        public double getLength() {
+            return measures[2 * index + 1];
+        }
+
+        public void setAttribute(int attributeIndex, Object newAttribute) {
+            throw new UnsupportedOperationException("Columnar features cannot be modified");
+        }
+
+        public void setAttributes(Object[] attributes) {
+            throw new UnsupportedOperationException("Columnar features cannot be modified");
+        }
+
+        public void setSchema(FeatureSchema schema) {
+            throw new UnsupportedOperationException("Columnar features cannot be modified");
+        }
+    }
+
+    private static final class Decoded {
+        final int index;
+        final Geometry geometry;
+
+        Decoded(int index, Geometry geometry) {
+            this.index = index;
+            this.geometry = geometry;
+        }
+    }
+}
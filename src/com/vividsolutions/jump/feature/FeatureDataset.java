@@ -84,8 +84,7 @@ public class FeatureDataset implements FeatureCollection {
 
             for (Iterator i = features.iterator(); i.hasNext();) {
                 Feature feature = (Feature) i.next();
-                envelope.expandToInclude(feature.getGeometry()
-                                                .getEnvelopeInternal());
+                envelope.expandToInclude(FeatureUtil.getEnvelope(feature));
             }
         }
 
@@ -119,7 +118,7 @@ public class FeatureDataset implements FeatureCollection {
         for (Iterator i = features.iterator(); i.hasNext();) {
             Feature feature = (Feature) i.next();
 
-            if (feature.getGeometry().getEnvelopeInternal().intersects(envelope)) {
+            if (FeatureUtil.getEnvelope(feature).intersects(envelope)) {
                 queryResult.add(feature);
             }
         }
@@ -130,7 +129,7 @@ public class FeatureDataset implements FeatureCollection {
     public void add(Feature feature) {
         features.add(feature);
         if (envelope != null) {
-            envelope.expandToInclude(feature.getGeometry().getEnvelopeInternal());
+            envelope.expandToInclude(FeatureUtil.getEnvelope(feature));
         }
     }
 
@@ -184,7 +183,7 @@ public class FeatureDataset implements FeatureCollection {
         if (envelope != null) {
             for (Iterator i = features.iterator(); i.hasNext(); ) {
                 Feature feature = (Feature) i.next();
-                envelope.expandToInclude(feature.getGeometry().getEnvelopeInternal());
+                envelope.expandToInclude(FeatureUtil.getEnvelope(feature));
             }            
         }
     }
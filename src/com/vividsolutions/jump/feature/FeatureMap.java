@@ -0,0 +1,248 @@
+package com.vividsolutions.jump.feature;
+
+import java.util.*;
+
+
+/**
+ * A Map keyed by Feature which uses object identity, rather than
+ * Feature#compareTo or Feature#equals, to tell keys apart. Lookups are a
+ * single hash probe, and two features with identical geometry are kept as
+ * two separate entries (a TreeMap of Features collapses them into one,
+ * because AbstractBasicFeature orders features by geometry).
+ * <P>
+ * Optionally keeps the keys in insertion order, so that iterating over a
+ * target-to-Matches map visits the targets in the order they were matched.
+ */
+public class FeatureMap extends AbstractMap {
+    private IdentityHashMap featureToEntryMap = new IdentityHashMap();
+
+    //Null unless insertion order is kept. Removed entries are left in place
+    //(flagged) and compacted away once they are more than half of the list,
+    //so that #remove stays O(1) amortised.
+    private ArrayList orderedEntries;
+    private int removedEntryCount = 0;
+
+    /**
+     * Creates a FeatureMap whose iteration order is unspecified.
+     */
+    public FeatureMap() {
+        this(false);
+    }
+
+    /**
+     * Creates a FeatureMap.
+     * @param insertionOrdered whether iteration should follow the order in
+     * which the keys were first put
+     */
+    public FeatureMap(boolean insertionOrdered) {
+        if (insertionOrdered) {
+            orderedEntries = new ArrayList();
+        }
+    }
+
+    public boolean isInsertionOrdered() {
+        return orderedEntries != null;
+    }
+
+    public int size() {
+        return featureToEntryMap.size();
+    }
+
+    public boolean containsKey(Object key) {
+        return featureToEntryMap.containsKey(key);
+    }
+
+    public Object get(Object key) {
+        Entry entry = (Entry) featureToEntryMap.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * @param key the Feature to map from
+     */
+    public Object put(Object key, Object value) {
+        Entry entry = (Entry) featureToEntryMap.get(key);
+        if (entry != null) {
+            return entry.setValue(value);
+        }
+        entry = new Entry((Feature) key, value);
+        featureToEntryMap.put(key, entry);
+        if (orderedEntries != null) {
+            orderedEntries.add(entry);
+        }
+        return null;
+    }
+
+    public Object remove(Object key) {
+        Entry entry = (Entry) featureToEntryMap.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        markRemoved(entry);
+        return entry.value;
+    }
+
+    public void clear() {
+        featureToEntryMap.clear();
+        if (orderedEntries != null) {
+            orderedEntries.clear();
+            removedEntryCount = 0;
+        }
+    }
+
+    public Set entrySet() {
+        return new AbstractSet() {
+            public int size() {
+                return FeatureMap.this.size();
+            }
+
+            public Iterator iterator() {
+                return orderedEntries == null
+                    ? new EntryIterator(featureToEntryMap.values().iterator())
+                    : new EntryIterator(new LiveEntryIterator());
+            }
+        };
+    }
+
+    private void markRemoved(Entry entry) {
+        if (orderedEntries == null) {
+            return;
+        }
+        entry.removed = true;
+        removedEntryCount++;
+        compactIfSparse();
+    }
+
+    /**
+     * Replaces the ordered list by one without the removed entries. The old
+     * list is left as it was, so iterators over it carry on unaffected.
+     */
+    private void compactIfSparse() {
+        if (orderedEntries == null || removedEntryCount <= orderedEntries.size() / 2) {
+            return;
+        }
+        ArrayList liveEntries = new ArrayList(size());
+        for (Iterator i = orderedEntries.iterator(); i.hasNext();) {
+            Entry entry = (Entry) i.next();
+            if (!entry.removed) {
+                liveEntries.add(entry);
+            }
+        }
+        orderedEntries = liveEntries;
+        removedEntryCount = 0;
+    }
+
+    /**
+     * Iterates over the ordered entries, skipping those flagged as removed.
+     */
+    private class LiveEntryIterator implements Iterator {
+        private Iterator i;
+        private Entry next;
+
+        public LiveEntryIterator() {
+            i = orderedEntries.iterator();
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (i.hasNext()) {
+                Entry entry = (Entry) i.next();
+                if (!entry.removed) {
+                    next = entry;
+                    return;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Object next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry entry = next;
+            advance();
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Wraps an iterator over Entries, supporting #remove via the map.
+     */
+    private class EntryIterator implements Iterator {
+        private Iterator i;
+        private Entry last;
+
+        public EntryIterator(Iterator i) {
+            this.i = i;
+        }
+
+        public boolean hasNext() {
+            return i.hasNext();
+        }
+
+        public Object next() {
+            last = (Entry) i.next();
+            return last;
+        }
+
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            if (orderedEntries == null) {
+                //Iterating the identity map itself, so remove through it
+                i.remove();
+            } else {
+                featureToEntryMap.remove(last.key);
+                markRemoved(last);
+            }
+            last = null;
+        }
+    }
+
+    private static class Entry implements Map.Entry {
+        private Feature key;
+        private Object value;
+        private boolean removed = false;
+
+        public Entry(Feature key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Object setValue(Object value) {
+            Object oldValue = this.value;
+            this.value = value;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry other = (Map.Entry) o;
+            return key == other.getKey() &&
+            (value == null ? other.getValue() == null : value.equals(other.getValue()));
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(key) ^ (value == null ? 0 : value.hashCode());
+        }
+    }
+}
@@ -6,6 +6,8 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 
 public class FeatureUtil {
@@ -35,6 +37,56 @@ public class FeatureUtil {
 	    return list;
 	}
 	
+	/**
+	 * Returns an envelope containing the feature's geometry, without creating
+	 * the geometry if the feature can avoid it.
+	 * @see AbstractBasicFeature#getEnvelope()
+	 */
+	public static Envelope getEnvelope(Feature feature) {
+	    if (feature instanceof AbstractBasicFeature) {
+	        return ((AbstractBasicFeature) feature).getEnvelope();
+	    }
+	    return feature.getGeometry().getEnvelopeInternal();
+	}
+	
+	/**
+	 * Returns the centroid of the feature's geometry, using a stored value if
+	 * the feature has one.
+	 * @return the centroid, or null if the geometry is empty
+	 * @see AbstractBasicFeature#getCentroid()
+	 */
+	public static Coordinate getCentroid(Feature feature) {
+	    if (feature instanceof AbstractBasicFeature) {
+	        return ((AbstractBasicFeature) feature).getCentroid();
+	    }
+	    Geometry geometry = feature.getGeometry();
+	    return geometry.isEmpty() ? null : geometry.getCentroid().getCoordinate();
+	}
+	
+	/**
+	 * Returns the area of the feature's geometry, using a stored value if
+	 * the feature has one.
+	 * @see AbstractBasicFeature#getArea()
+	 */
+	public static double getArea(Feature feature) {
+	    if (feature instanceof AbstractBasicFeature) {
+	        return ((AbstractBasicFeature) feature).getArea();
+	    }
+	    return feature.getGeometry().getArea();
+	}
+	
+	/**
+	 * Returns the length of the feature's geometry, using a stored value if
+	 * the feature has one.
+	 * @see AbstractBasicFeature#getLength()
+	 */
+	public static double getLength(Feature feature) {
+	    if (feature instanceof AbstractBasicFeature) {
+	        return ((AbstractBasicFeature) feature).getLength();
+	    }
+	    return feature.getGeometry().getLength();
+	}
+	
 	public static class IDComparator implements Comparator {
 		/**
 		 *  Compares two Features for order based on their ID.
@@ -64,7 +116,8 @@ public class FeatureUtil {
 	
 	private static int lastID = 0;
 	
-	public static int nextID() { return ++lastID; }
+	//Synchronized because features may be created on matcher worker threads
+	public static synchronized int nextID() { return ++lastID; }
 
     /**
      * Although Feature implements Cloneable, this method is useful
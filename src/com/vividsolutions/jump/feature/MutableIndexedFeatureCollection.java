@@ -0,0 +1,123 @@
+package com.vividsolutions.jump.feature;
+
+import java.util.*;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+
+/**
+ *  A FeatureCollectionWrapper which, like IndexedFeatureCollection, is indexed
+ *  for query purposes, but which can also be modified. Features are kept in a
+ *  Quadtree, so adding or removing a feature, or re-indexing one whose
+ *  geometry has changed, takes about O(log n) on the index (plus whatever the
+ *  wrapped collection takes).
+ *  <p>
+ *  The envelope each feature was indexed under is remembered, because the
+ *  Quadtree needs it to find the feature again. If a feature's geometry is
+ *  changed, call #update so that it is found by later queries.
+ *  <p>
+ *  Queries may run on several threads at once, but not at the same time as a
+ *  modification.
+ */
+public class MutableIndexedFeatureCollection extends FeatureCollectionWrapper {
+    private Quadtree quadtree = new Quadtree();
+
+    /**
+     * Feature to the Envelope it is indexed under.
+     */
+    private FeatureMap indexedEnvelopes = new FeatureMap();
+
+    public MutableIndexedFeatureCollection(FeatureCollection fc) {
+        super(fc);
+        for (Iterator i = fc.iterator(); i.hasNext();) {
+            insert((Feature) i.next());
+        }
+    }
+
+    public List query(Envelope env) {
+        // index query returns list of *potential* overlaps (e.g. it is a primary filter)
+        List candidate = quadtree.query(env);
+
+        // filter out only Features where envelope actually intersects
+        List result = new ArrayList();
+
+        for (Iterator i = candidate.iterator(); i.hasNext();) {
+            Feature f = (Feature) i.next();
+
+            if (env.intersects(FeatureUtil.getEnvelope(f))) {
+                result.add(f);
+            }
+        }
+
+        return result;
+    }
+
+    public void add(Feature feature) {
+        fc.add(feature);
+        insert(feature);
+    }
+
+    public void remove(Feature feature) {
+        fc.remove(feature);
+        delete(feature);
+    }
+
+    public void addAll(Collection features) {
+        fc.addAll(features);
+        for (Iterator i = features.iterator(); i.hasNext();) {
+            insert((Feature) i.next());
+        }
+    }
+
+    public void removeAll(Collection features) {
+        fc.removeAll(features);
+        for (Iterator i = features.iterator(); i.hasNext();) {
+            delete((Feature) i.next());
+        }
+    }
+
+    public Collection remove(Envelope env) {
+        List features = query(env);
+        removeAll(features);
+        return features;
+    }
+
+    /**
+     * Re-indexes a feature whose geometry has changed since it was added.
+     * @param feature a feature in this collection
+     * @return false if the feature is not in this collection
+     */
+    public boolean update(Feature feature) {
+        if (!delete(feature)) {
+            return false;
+        }
+        insert(feature);
+        return true;
+    }
+
+    /**
+     * @return whether the feature is in this collection, found by identity
+     */
+    public boolean contains(Feature feature) {
+        return indexedEnvelopes.containsKey(feature);
+    }
+
+    private void insert(Feature feature) {
+        //Copy the envelope in case the geometry later recomputes it in place.
+        Envelope envelope = new Envelope(FeatureUtil.getEnvelope(feature));
+        Envelope previous = (Envelope) indexedEnvelopes.put(feature, envelope);
+        if (previous != null) {
+            quadtree.remove(previous, feature);
+        }
+        quadtree.insert(envelope, feature);
+    }
+
+    private boolean delete(Feature feature) {
+        Envelope envelope = (Envelope) indexedEnvelopes.remove(feature);
+        if (envelope == null) {
+            return false;
+        }
+        quadtree.remove(envelope, feature);
+        return true;
+    }
+}
@@ -0,0 +1,237 @@
+package com.vividsolutions.jump.feature;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ *  A read-only R-tree over the envelopes of items 0 to n - 1, packed with the
+ *  Sort-Tile-Recursive algorithm into two flat buffers: the bounds of every
+ *  node, level by level from the leaves up, and the item of each leaf. Unlike
+ *  an STRtree it holds no objects, so it can be written to a file and used
+ *  straight from a memory-mapped buffer without being built again.
+ *  <p>
+ *  The leaves are sorted as in STRtree; the upper levels simply group
+ *  consecutive nodes, which are already close together. Queries may run on
+ *  several threads at once.
+ */
+public class PackedSTRtree {
+    private int nodeCapacity;
+    /** The index of the first node of each level, then the total node count */
+    private int[] levelStarts;
+    /** minX, maxX, minY, maxY of each node */
+    private DoubleBuffer bounds;
+    private IntBuffer items;
+
+    /**
+     * @param envelopes minX, maxX, minY, maxY of each item; items whose minX
+     * is NaN (empty geometries) are left out
+     * @param count the number of items
+     */
+    public PackedSTRtree(double[] envelopes, int count, int nodeCapacity) {
+        if (nodeCapacity < 2) {
+            throw new IllegalArgumentException("Node capacity must be at least 2");
+        }
+        this.nodeCapacity = nodeCapacity;
+        int n = 0;
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (!Double.isNaN(envelopes[4 * i])) {
+                order[n++] = i;
+            }
+        }
+        sortLeaves(order, n, envelopes);
+
+        int levelCount = 1;
+        int nodeCount = n;
+        for (int size = n; size > 1; size = parentCount(size)) {
+            nodeCount += parentCount(size);
+            levelCount++;
+        }
+        levelStarts = new int[levelCount + 1];
+        double[] nodeBounds = new double[4 * nodeCount];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(envelopes, 4 * order[i], nodeBounds, 4 * i, 4);
+        }
+        levelStarts[1] = n;
+        for (int level = 1; level < levelCount; level++) {
+            int childStart = levelStarts[level - 1];
+            int childEnd = levelStarts[level];
+            int parent = childEnd;
+            for (int child = childStart; child < childEnd; child += nodeCapacity, parent++) {
+                int p = 4 * parent;
+                nodeBounds[p] = nodeBounds[p + 2] = Double.POSITIVE_INFINITY;
+                nodeBounds[p + 1] = nodeBounds[p + 3] = Double.NEGATIVE_INFINITY;
+                for (int c = child; c < Math.min(child + nodeCapacity, childEnd); c++) {
+                    nodeBounds[p] = Math.min(nodeBounds[p], nodeBounds[4 * c]);
+                    nodeBounds[p + 1] = Math.max(nodeBounds[p + 1], nodeBounds[4 * c + 1]);
+                    nodeBounds[p + 2] = Math.min(nodeBounds[p + 2], nodeBounds[4 * c + 2]);
+                    nodeBounds[p + 3] = Math.max(nodeBounds[p + 3], nodeBounds[4 * c + 3]);
+                }
+            }
+            levelStarts[level + 1] = parent;
+        }
+        bounds = DoubleBuffer.wrap(nodeBounds);
+        items = IntBuffer.wrap(order, 0, n).slice();
+    }
+
+    /**
+     * Wraps a tree written out earlier, see #getLevelStarts, #getBounds and
+     * #getItems.
+     */
+    public PackedSTRtree(int nodeCapacity, int[] levelStarts, DoubleBuffer bounds, IntBuffer items) {
+        this.nodeCapacity = nodeCapacity;
+        this.levelStarts = levelStarts;
+        this.bounds = bounds;
+        this.items = items;
+    }
+
+    private int parentCount(int size) {
+        return (size + nodeCapacity - 1) / nodeCapacity;
+    }
+
+    /**
+     * Sorts the items by the x of their centres, then each vertical slice of
+     * them by y.
+     */
+    private void sortLeaves(int[] order, int n, double[] envelopes) {
+        double[] centres = new double[n];
+        for (int i = 0; i < n; i++) {
+            centres[i] = envelopes[4 * order[i]] + envelopes[4 * order[i] + 1];
+        }
+        sort(order, centres, 0, n);
+        int sliceCount = (int) Math.ceil(Math.sqrt(parentCount(n)));
+        int sliceSize = sliceCount * nodeCapacity;
+        for (int i = 0; i < n; i++) {
+            centres[i] = envelopes[4 * order[i] + 2] + envelopes[4 * order[i] + 3];
+        }
+        for (int start = 0; start < n; start += sliceSize) {
+            sort(order, centres, start, Math.min(start + sliceSize, n));
+        }
+    }
+
+    /**
+     * Sorts order[from, to) and keys[from, to) together by key.
+     */
+    private static void sort(int[] order, double[] keys, int from, int to) {
+        while (to - from > 16) {
+            double pivot = median(keys[from], keys[(from + to) >>> 1], keys[to - 1]);
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(order, keys, i++, j--);
+                }
+            }
+            //Recurse into the smaller part, so the stack stays shallow
+            if (j - from < to - i) {
+                sort(order, keys, from, j + 1);
+                from = i;
+            } else {
+                sort(order, keys, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && keys[j - 1] > keys[j]; j--) {
+                swap(order, keys, j - 1, j);
+            }
+        }
+    }
+
+    private static double median(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private static void swap(int[] order, double[] keys, int i, int j) {
+        int o = order[i];
+        order[i] = order[j];
+        order[j] = o;
+        double k = keys[i];
+        keys[i] = keys[j];
+        keys[j] = k;
+    }
+
+    /**
+     * @return the items whose envelopes intersect the given envelope, in no
+     * particular order
+     */
+    public int[] query(Envelope env) {
+        int[] result = new int[16];
+        int resultCount = 0;
+        int levelCount = levelStarts.length - 1;
+        if (env.isNull() || levelStarts[levelCount] == 0) {
+            return new int[0];
+        }
+        //Pairs of (level, node), starting from the root
+        int[] stack = new int[2 * levelCount * nodeCapacity];
+        int top = 0;
+        stack[top++] = levelCount - 1;
+        stack[top++] = levelStarts[levelCount - 1];
+        while (top > 0) {
+            int node = stack[--top];
+            int level = stack[--top];
+            if (!intersects(node, env)) {
+                continue;
+            }
+            if (level == 0) {
+                if (resultCount == result.length) {
+                    int[] newResult = new int[2 * resultCount];
+                    System.arraycopy(result, 0, newResult, 0, resultCount);
+                    result = newResult;
+                }
+                result[resultCount++] = items.get(node);
+                continue;
+            }
+            int firstChild = levelStarts[level - 1]
+                + (node - levelStarts[level]) * nodeCapacity;
+            int lastChild = Math.min(firstChild + nodeCapacity, levelStarts[level]);
+            for (int child = firstChild; child < lastChild; child++) {
+                stack[top++] = level - 1;
+                stack[top++] = child;
+            }
+        }
+        int[] trimmed = new int[resultCount];
+        System.arraycopy(result, 0, trimmed, 0, resultCount);
+        return trimmed;
+    }
+
+    private boolean intersects(int node, Envelope env) {
+        int b = 4 * node;
+        return bounds.get(b) <= env.getMaxX() && bounds.get(b + 1) >= env.getMinX()
+            && bounds.get(b + 2) <= env.getMaxY() && bounds.get(b + 3) >= env.getMinY();
+    }
+
+    public int getNodeCapacity() {
+        return nodeCapacity;
+    }
+
+    /**
+     * @return the index of the first node of each level, from the leaves up,
+     * followed by the number of nodes
+     */
+    public int[] getLevelStarts() {
+        return levelStarts;
+    }
+
+    /**
+     * @return minX, maxX, minY, maxY of each node
+     */
+    public DoubleBuffer getBounds() {
+        return bounds.duplicate();
+    }
+
+    /**
+     * @return the item of each leaf
+     */
+    public IntBuffer getItems() {
+        return items.duplicate();
+    }
+}
@@ -0,0 +1,122 @@
+package com.vividsolutions.jump.geom;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A two-dimensional CoordinateSequence that reads its x and y values from a
+ * slice of a (typically shared) double array, x0, y0, x1, y1, ... No
+ * Coordinate objects are kept; they are created when asked for.
+ * <p>
+ * A sequence over a shared array is read-only, as other geometries may be
+ * using the same values. A clone has an array of its own, and can be
+ * modified.
+ */
+public class DoubleArrayCoordinateSequence implements CoordinateSequence {
+    private double[] ordinates;
+    private int offset;
+    private int size;
+    private boolean readOnly;
+
+    /**
+     * Creates a read-only view of part of an array.
+     * @param ordinates x and y values, in pairs
+     * @param offset the index in the array of the first x value
+     * @param size the number of coordinates
+     */
+    public DoubleArrayCoordinateSequence(double[] ordinates, int offset, int size) {
+        this(ordinates, offset, size, true);
+    }
+
+    /**
+     * @param readOnly whether #setOrdinate should be refused
+     */
+    public DoubleArrayCoordinateSequence(double[] ordinates, int offset, int size, boolean readOnly) {
+        this.ordinates = ordinates;
+        this.offset = offset;
+        this.size = size;
+        this.readOnly = readOnly;
+    }
+
+    public int getDimension() {
+        return 2;
+    }
+
+    public Coordinate getCoordinate(int i) {
+        return new Coordinate(getX(i), getY(i));
+    }
+
+    public Coordinate getCoordinateCopy(int i) {
+        return getCoordinate(i);
+    }
+
+    public void getCoordinate(int i, Coordinate coordinate) {
+        coordinate.x = getX(i);
+        coordinate.y = getY(i);
+    }
+
+    public double getX(int i) {
+        return ordinates[offset + 2 * i];
+    }
+
+    public double getY(int i) {
+        return ordinates[offset + 2 * i + 1];
+    }
+
+    public double getOrdinate(int i, int ordinateIndex) {
+        switch (ordinateIndex) {
+        case X:
+            return getX(i);
+        case Y:
+            return getY(i);
+        default:
+            return Double.NaN;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void setOrdinate(int i, int ordinateIndex, double value) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Shared coordinates cannot be modified");
+        }
+        if (ordinateIndex == X || ordinateIndex == Y) {
+            ordinates[offset + 2 * i + ordinateIndex] = value;
+        }
+    }
+
+    public Coordinate[] toCoordinateArray() {
+        Coordinate[] coordinates = new Coordinate[size];
+        for (int i = 0; i < size; i++) {
+            coordinates[i] = getCoordinate(i);
+        }
+        return coordinates;
+    }
+
+    public Envelope expandEnvelope(Envelope env) {
+        for (int i = 0; i < size; i++) {
+            env.expandToInclude(getX(i), getY(i));
+        }
+        return env;
+    }
+
+    public Object clone() {
+        double[] copy = new double[2 * size];
+        System.arraycopy(ordinates, offset, copy, 0, copy.length);
+        return new DoubleArrayCoordinateSequence(copy, 0, size, false);
+    }
+
+    public String toString() {
+        StringBuffer buffer = new StringBuffer("(");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                buffer.append(", ");
+            }
+            buffer.append(getX(i)).append(" ").append(getY(i));
+        }
+        return buffer.append(")").toString();
+    }
+}
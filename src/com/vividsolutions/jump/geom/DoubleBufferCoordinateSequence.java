@@ -0,0 +1,113 @@
+package com.vividsolutions.jump.geom;
+
+import java.nio.DoubleBuffer;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A read-only, two-dimensional CoordinateSequence that reads its x and y
+ * values from a slice of a DoubleBuffer, x0, y0, x1, y1, ... The buffer may be
+ * direct (off-heap) or memory-mapped, in which case no coordinate data is kept
+ * on the Java heap. Coordinate objects are only created when asked for, so
+ * prefer #getX and #getY.
+ * <p>
+ * A clone copies the values to the heap, as a DoubleArrayCoordinateSequence
+ * which can be modified.
+ */
+public class DoubleBufferCoordinateSequence implements CoordinateSequence {
+    private DoubleBuffer ordinates;
+    private int offset;
+    private int size;
+
+    /**
+     * @param ordinates x and y values, in pairs; only absolute gets are used,
+     * so the buffer may be shared by several threads
+     * @param offset the index in the buffer of the first x value
+     * @param size the number of coordinates
+     */
+    public DoubleBufferCoordinateSequence(DoubleBuffer ordinates, int offset, int size) {
+        this.ordinates = ordinates;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public int getDimension() {
+        return 2;
+    }
+
+    public Coordinate getCoordinate(int i) {
+        return new Coordinate(getX(i), getY(i));
+    }
+
+    public Coordinate getCoordinateCopy(int i) {
+        return getCoordinate(i);
+    }
+
+    public void getCoordinate(int i, Coordinate coordinate) {
+        coordinate.x = getX(i);
+        coordinate.y = getY(i);
+    }
+
+    public double getX(int i) {
+        return ordinates.get(offset + 2 * i);
+    }
+
+    public double getY(int i) {
+        return ordinates.get(offset + 2 * i + 1);
+    }
+
+    public double getOrdinate(int i, int ordinateIndex) {
+        switch (ordinateIndex) {
+        case X:
+            return getX(i);
+        case Y:
+            return getY(i);
+        default:
+            return Double.NaN;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void setOrdinate(int i, int ordinateIndex, double value) {
+        throw new UnsupportedOperationException("Shared coordinates cannot be modified");
+    }
+
+    public Coordinate[] toCoordinateArray() {
+        Coordinate[] coordinates = new Coordinate[size];
+        for (int i = 0; i < size; i++) {
+            coordinates[i] = getCoordinate(i);
+        }
+        return coordinates;
+    }
+
+    public Envelope expandEnvelope(Envelope env) {
+        for (int i = 0; i < size; i++) {
+            env.expandToInclude(getX(i), getY(i));
+        }
+        return env;
+    }
+
+    public Object clone() {
+        double[] copy = new double[2 * size];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = ordinates.get(offset + i);
+        }
+        return new DoubleArrayCoordinateSequence(copy, 0, size, false);
+    }
+
+    public String toString() {
+        StringBuffer buffer = new StringBuffer("(");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                buffer.append(", ");
+            }
+            buffer.append(getX(i)).append(" ").append(getY(i));
+        }
+        return buffer.append(")").toString();
+    }
+}
@@ -67,6 +67,31 @@ public class EnvelopeUtil {
             env.getMinY() - distance, env.getMaxY() + distance);
     }
 
+    /**
+     * Tests whether other intersects env expanded by the given distance, as
+     * #expand(env, distance).intersects(other) would, but without creating
+     * a new Envelope.
+     */
+    public static boolean intersectsExpanded(Envelope env, double distance,
+        Envelope other) {
+        if (env.isNull() || other.isNull()) {
+            return false;
+        }
+
+        if (distance < 0) {
+            double minSize = 2.0 * -distance;
+
+            if ((env.getWidth() < minSize) || (env.getHeight() < minSize)) {
+                return false;
+            }
+        }
+
+        return (other.getMinX() <= (env.getMaxX() + distance)) &&
+        (other.getMaxX() >= (env.getMinX() - distance)) &&
+        (other.getMinY() <= (env.getMaxY() + distance)) &&
+        (other.getMaxY() >= (env.getMinY() - distance));
+    }
+
     public static void translate(Envelope e, Coordinate displacement) {
         if (e.isNull()) {
             return;
@@ -65,9 +65,12 @@ public class ConflateMatchCommand extends Command {
             if (!addPrimitivesCommand.executeCommand())
                 return false;
         }
-        if (!replaceCommand.executeCommand())
-            return false;
+        // remove the match first, so the edit does not get matched again
         matches.remove(match);
+        if (!replaceCommand.executeCommand()) {
+            matches.add(match);
+            return false;
+        }
 
         return true;
     }
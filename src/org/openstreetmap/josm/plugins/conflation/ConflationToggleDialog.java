@@ -9,7 +9,15 @@ import java.awt.Component;
 import java.awt.Dialog;
 import java.awt.Rectangle;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.table.TableCellRenderer;
@@ -53,6 +61,27 @@ public class ConflationToggleDialog extends ToggleDialog
     SimpleMatchesTableModel matchTableModel;
     SimpleMatchList matches;
     SimpleMatchSettings settings;
+    IncrementalMatcher incrementalMatcher;
+    /**
+     * Primitives edited or deleted since the last batch of re-matching was
+     * started; only used on the EDT, see {@link #scheduleRematch}
+     */
+    private Set<OsmPrimitive> pendingRematch =
+            Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
+    private Set<OsmPrimitive> pendingRemoved =
+            Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
+    private boolean rematchBusy = false;
+    private ExecutorService rematchExecutor;
+    /**
+     * Converted geometries, kept between runs while the primitives are unchanged
+     */
+    GeometryCache geometryCache;
+    /**
+     * The reference dataset prepared in an earlier session, see
+     * {@link #openPreparedReference}
+     */
+    PreparedDataset preparedReference;
+    String preparedReferenceKey;
     SettingsDialog settingsDialog;
     ConflateAction conflateAction;
     RemoveAction removeAction;
@@ -740,34 +769,198 @@ public class ConflationToggleDialog extends ToggleDialog
     @Override
     public void primitivesRemoved(PrimitivesRemovedEvent event) {
         List<? extends OsmPrimitive> prims = event.getPrimitives();
-        for (OsmPrimitive p : prims) {
-            // TODO: use hashmap
-            for (SimpleMatch c : matches) {
-                if (c.getReferenceObject().equals(p) || c.getSubjectObject().equals(p)) {
-                    matches.remove(c);
-                    break;
-                }
-            }
-
-            referenceOnlyListModel.removeElement(p);
-            subjectOnlyListModel.removeElement(p);
-        }
+        if (geometryCache != null)
+            geometryCache.invalidate(prims);
+        if (incrementalMatcher != null) {
+            pendingRemoved.addAll(prims);
+            scheduleRematch();
+        }
+        matches.removeAllFor(prims);
+        referenceOnlyListModel.removeAll(prims);
+        subjectOnlyListModel.removeAll(prims);
     }
 
     @Override
     public void tagsChanged(TagsChangedEvent event) {
+        rematch(event.getPrimitives());
     }
 
     @Override
     public void nodeMoved(NodeMovedEvent event) {
+        geometryChanged(event.getPrimitives());
     }
 
     @Override
     public void wayNodesChanged(WayNodesChangedEvent event) {
+        geometryChanged(event.getPrimitives());
     }
 
     @Override
     public void relationMembersChanged(RelationMembersChangedEvent event) {
+        geometryChanged(event.getPrimitives());
+    }
+
+    private void geometryChanged(Collection<? extends OsmPrimitive> prims) {
+        Collection<OsmPrimitive> changed = withReferrers(prims);
+        if (geometryCache != null)
+            geometryCache.invalidate(changed);
+        rematch(changed);
+    }
+
+    /**
+     * Update the matches of edited primitives, if enabled.
+     */
+    private void rematch(Collection<? extends OsmPrimitive> changed) {
+        if (incrementalMatcher != null) {
+            pendingRematch.addAll(changed);
+            scheduleRematch();
+        }
+    }
+
+    /**
+     * Re-matches the pending primitives as one batch, once the events of the
+     * current edit have all been handled. The features are rebuilt on the
+     * EDT, while the indexes are built and the targets scored on a
+     * background thread; edits made meanwhile wait for the next batch.
+     * <p>
+     * The background thread converts primitives and reads their nodes, so it
+     * holds the read locks of both datasets while it does: an edit started
+     * meanwhile waits for it, and the geometries it converts and caches are
+     * never those of a half-made edit, and always precede the invalidation
+     * by the edit's events.
+     */
+    private void scheduleRematch() {
+        if (rematchBusy)
+            return;
+        rematchBusy = true;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                startRematch();
+            }
+        });
+    }
+
+    private void startRematch() {
+        final IncrementalMatcher matcher = incrementalMatcher;
+        if (matcher == null || (pendingRematch.isEmpty() && pendingRemoved.isEmpty())) {
+            pendingRematch.clear();
+            pendingRemoved.clear();
+            rematchBusy = false;
+            return;
+        }
+        if (!matcher.isIndexed()) {
+            // first edit since the run: index it first
+            runRematchTask(matcher, new Runnable() {
+                @Override
+                public void run() {
+                    matcher.buildIndex();
+                }
+            }, null);
+            return;
+        }
+        matcher.primitivesRemoved(pendingRemoved);
+        pendingRemoved.clear();
+        final IncrementalMatcher.Rematch rematch = matcher.prepare(pendingRematch, matches,
+                referenceOnlyListModel, subjectOnlyListModel);
+        pendingRematch.clear();
+        if (rematch == null) {
+            rematchBusy = false;
+            return;
+        }
+        runRematchTask(matcher, new Runnable() {
+            @Override
+            public void run() {
+                rematch.score();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                rematch.apply(matches, referenceOnlyListModel, subjectOnlyListModel);
+            }
+        });
+    }
+
+    /**
+     * Runs the task on the re-matching thread, then the follow-up on the EDT
+     * unless matching has been run again meanwhile, then starts the next
+     * batch if there are pending edits.
+     */
+    private void runRematchTask(final IncrementalMatcher matcher, final Runnable task,
+            final Runnable followUp) {
+        final List<Lock> locks = new ArrayList<Lock>(2);
+        locks.add(settings.getReferenceDataSet().getReadLock());
+        if (settings.getSubjectDataSet() != settings.getReferenceDataSet())
+            locks.add(settings.getSubjectDataSet().getReadLock());
+        if (rematchExecutor == null) {
+            rematchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "conflation-rematch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        rematchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean done = false;
+                lockAll(locks);
+                try {
+                    task.run();
+                    done = true;
+                } finally {
+                    for (Lock lock : locks) {
+                        lock.unlock();
+                    }
+                    final boolean succeeded = done;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (succeeded && followUp != null && matcher == incrementalMatcher)
+                                followUp.run();
+                            rematchBusy = false;
+                            if (!pendingRematch.isEmpty() || !pendingRemoved.isEmpty())
+                                scheduleRematch();
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Takes all the locks, but never waits for one while holding another, so
+     * that a command editing both datasets cannot deadlock with it.
+     */
+    private static void lockAll(List<Lock> locks) {
+        while (true) {
+            locks.get(0).lock();
+            int locked = 1;
+            while (locked < locks.size() && locks.get(locked).tryLock())
+                locked++;
+            if (locked == locks.size())
+                return;
+            while (locked > 0)
+                locks.get(--locked).unlock();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * The given primitives and every way or relation whose geometry depends on
+     * them, directly or not.
+     */
+    private static Collection<OsmPrimitive> withReferrers(Collection<? extends OsmPrimitive> prims) {
+        Set<OsmPrimitive> result = new LinkedHashSet<OsmPrimitive>();
+        LinkedList<OsmPrimitive> queue = new LinkedList<OsmPrimitive>(prims);
+        while (!queue.isEmpty()) {
+            OsmPrimitive p = queue.removeFirst();
+            if (result.add(p))
+                queue.addAll(p.getReferrers());
+        }
+        return result;
     }
 
     @Override
@@ -776,36 +969,99 @@ public class ConflationToggleDialog extends ToggleDialog
 
     @Override
     public void dataChanged(DataChangedEvent event) {
+        // too many changes to say which geometries are still valid
+        if (geometryCache != null)
+            geometryCache.clear();
     }
 
     /**
-     * Create FeatureSchema using union of all keys from all selected primitives
+     * Create features sharing schemas by key set, in a collection whose
+     * schema is the union of all keys from all selected primitives
      * @param prims
      * @return 
      */
-    private FeatureSchema createSchema(Collection<OsmPrimitive> prims) {
-        Set<String> keys = new HashSet<String>();
-        for (OsmPrimitive prim : prims) {
-            keys.addAll(prim.getKeys().keySet());
-        }
-        FeatureSchema schema = new FeatureSchema();
-        schema.addAttribute("__GEOMETRY__", AttributeType.GEOMETRY);
-        for (String key : keys) {
-            schema.addAttribute(key, AttributeType.STRING);
-        }
-        return schema;   
-    }
-    
     private FeatureCollection createFeatureCollection(Collection<OsmPrimitive> prims) {
-        FeatureDataset dataset = new FeatureDataset(createSchema(prims));
         //TODO: use factory instead of passing converter
         JTSConverter converter = new JTSConverter(true);
+        SchemaRegistry schemas = new SchemaRegistry();
+        if (geometryCache == null)
+            geometryCache = new GeometryCache(Main.pref.getLong(PREF_PREFIX + ".geometry-cache.max-coordinates",
+                    GeometryCache.DEFAULT_MAX_COORDINATES));
+        geometryCache.setProjection(Main.getProjection());
+        geometryCache.setPrepared(openPreparedReference());
+        // lazy geometries are converted only as matchers need them
+        boolean lazy = Main.pref.getBoolean(PREF_PREFIX + ".lazy-geometry", true);
+        List<Feature> features = new ArrayList<Feature>(prims.size());
         for (OsmPrimitive prim : prims) {
-            dataset.add(new OsmFeature(prim, converter));
+            features.add(new OsmFeature(prim, converter, schemas, geometryCache, lazy));
         }
-        return dataset;
+        return new FeatureDataset(features, schemas.createUnionSchema());
     }
     
+    /**
+     * The conflation.prepared-reference preference names a file in which the
+     * converted reference features are kept between sessions (see
+     * {@link PreparedDataset}). The file is written by the first match run,
+     * and written again by any later run whose reference selection it does
+     * not hold exactly, for example because the reference data has been
+     * edited or reloaded, or another projection is in use. A file which no
+     * longer fits costs no more than having none, until then.
+     * @return the file set in the preference, or null if there is none
+     */
+    private File getPreparedReferenceFile() {
+        String path = Main.pref.get(PREF_PREFIX + ".prepared-reference", "");
+        return path.isEmpty() ? null : new File(path);
+    }
+
+    /**
+     * Opens the prepared reference dataset, if there is one, unless it is
+     * already open for the current projection.
+     */
+    private PreparedDataset openPreparedReference() {
+        File file = getPreparedReferenceFile();
+        if (file == null || !file.isFile()) {
+            preparedReference = null;
+            preparedReferenceKey = null;
+            return null;
+        }
+        String projectionCode = Main.getProjection().toCode();
+        String key = file.getAbsolutePath() + "|" + file.lastModified() + "|" + projectionCode;
+        if (!key.equals(preparedReferenceKey)) {
+            preparedReference = null;
+            preparedReferenceKey = key;
+            try {
+                preparedReference = PreparedDataset.open(file, projectionCode);
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(Main.parent, ex.toString(),
+                        tr("Error opening prepared reference dataset"), JOptionPane.ERROR_MESSAGE);
+            }
+        }
+        return preparedReference;
+    }
+
+    /**
+     * Writes the reference features to the prepared reference file, if one is
+     * set and does not already hold exactly these features, so that later
+     * sessions need not convert them.
+     */
+    private void writePreparedReference(FeatureCollection refColl, JosmTaskMonitor monitor) {
+        File file = getPreparedReferenceFile();
+        if (file == null)
+            return;
+        // opened for this run by createFeatureCollection
+        if (file.exists() && preparedReference != null && preparedReference.isPreparedFrom(refColl))
+            return;
+        monitor.subTask(file.exists() ? tr("Rewriting outdated prepared reference dataset")
+                : tr("Writing prepared reference dataset"));
+        try {
+            PreparedDataset.write(file, refColl, Main.getProjection().toCode());
+        } catch (IOException ex) {
+            file.delete();
+            JOptionPane.showMessageDialog(Main.parent, ex.toString(),
+                    tr("Error writing prepared reference dataset"), JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     /**
      * Progress monitor for use with JCS
      */
@@ -849,13 +1105,16 @@ public class ConflationToggleDialog extends ToggleDialog
         FeatureCollection allFeatures = createFeatureCollection(allPrimitives);
         FeatureCollection refColl = new FeatureDataset(allFeatures.getFeatureSchema());
         FeatureCollection subColl = new FeatureDataset(allFeatures.getFeatureSchema());
+        Set<OsmPrimitive> referenceSelection = identitySet(settings.getReferenceSelection());
+        Set<OsmPrimitive> subjectSelection = identitySet(settings.getSubjectSelection());
         for (Feature f : allFeatures.getFeatures()) {
             OsmFeature osmFeature = (OsmFeature)f;
-            if (settings.getReferenceSelection().contains(osmFeature.getPrimitive()))
+            if (referenceSelection.contains(osmFeature.getPrimitive()))
                 refColl.add(osmFeature);
-            if (settings.getSubjectSelection().contains(osmFeature.getPrimitive()))
+            if (subjectSelection.contains(osmFeature.getPrimitive()))
                 subColl.add(osmFeature);
         }
+        writePreparedReference(refColl, monitor);
         
         //TODO: pass to MatchFinderPanel to use as hint/default for DistanceMatchers
         // get maximum possible distance so scores can be scaled (FIXME: not quite accurate)
@@ -867,6 +1126,18 @@ public class ConflationToggleDialog extends ToggleDialog
 //            envelope.getMaxX(),
 //            envelope.getMaxY());
         
+        // index the candidates once so bounded matchers can query them
+        // (node capacity 0 lets the index choose one from the collection size)
+        // (if matches are updated after edits, a mutable index of the
+        // candidates is only built on the first edit)
+        monitor.subTask(tr("Building spatial index"));
+        long indexStart = System.currentTimeMillis();
+        FeatureCollection candidates = subColl;
+        int nodeCapacity = Main.pref.getInteger(PREF_PREFIX + ".index.node-capacity", 0);
+        subColl = new IndexedFeatureCollection(subColl, nodeCapacity);
+        monitor.setCustomText(tr("Spatial index of {0} features built in {1} ms",
+                subColl.size(), System.currentTimeMillis() - indexStart));
+
         // build matcher
         FCMatchFinder finder = settings.getMatchFinder();
 
@@ -878,29 +1149,48 @@ public class ConflationToggleDialog extends ToggleDialog
         monitor.subTask("Finishing match list");
         
         // convert to simple one-to-one match
-        SimpleMatchList list = new SimpleMatchList();
+        List<SimpleMatch> simpleMatches = new ArrayList<SimpleMatch>(map.size());
         for (Map.Entry<OsmFeature, Matches> entry: map.entrySet()) {
             OsmFeature target = entry.getKey();
             OsmFeature subject = (OsmFeature)entry.getValue().getTopMatch();
             if (target != null && subject != null)
-                list.add(new SimpleMatch(target.getPrimitive(), subject.getPrimitive(),
+                simpleMatches.add(new SimpleMatch(target.getPrimitive(), subject.getPrimitive(),
                         entry.getValue().getTopScore()));
         }
+        SimpleMatchList list = new SimpleMatchList();
+        list.addAll(simpleMatches);
+
+        incrementalMatcher = null;
+        if (Main.pref.getBoolean(PREF_PREFIX + ".rematch-on-edit", true)
+                && settings.getFeatureMatcher() != null) {
+            incrementalMatcher = new IncrementalMatcher(settings.getFeatureMatcher(),
+                    refColl, candidates);
+        }
         
         monitor.finishTask();
         monitor.close();
         return list;
     }
 
+    private static Set<OsmPrimitive> identitySet(Collection<OsmPrimitive> prims) {
+        Set<OsmPrimitive> set = Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>(prims.size()));
+        set.addAll(prims);
+        return set;
+    }
+
     private void performMatching() {
         matches = generateMatches(settings);
 
         // populate unmatched objects
-        List<OsmPrimitive> referenceOnly = new ArrayList<OsmPrimitive>(settings.getReferenceSelection());
-        List<OsmPrimitive> subjectOnly = new ArrayList<OsmPrimitive>(settings.getSubjectSelection());
-        for (SimpleMatch match : matches) {
-            referenceOnly.remove(match.getReferenceObject());
-            subjectOnly.remove(match.getSubjectObject());
+        List<OsmPrimitive> referenceOnly = new ArrayList<OsmPrimitive>();
+        for (OsmPrimitive p : settings.getReferenceSelection()) {
+            if (!matches.hasMatchForReference(p))
+                referenceOnly.add(p);
+        }
+        List<OsmPrimitive> subjectOnly = new ArrayList<OsmPrimitive>();
+        for (OsmPrimitive p : settings.getSubjectSelection()) {
+            if (!matches.hasMatchForSubject(p))
+                subjectOnly.add(p);
         }
 
         referenceOnlyListModel.clear();
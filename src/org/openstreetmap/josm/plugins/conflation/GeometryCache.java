@@ -0,0 +1,155 @@
+// License: GPL. See LICENSE file for details. Copyright 2012 by Josh Doe and others.
+package org.openstreetmap.josm.plugins.conflation;
+
+import com.vividsolutions.jts.geom.Geometry;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.plugins.jts.JTSConverter;
+
+/**
+ * Holds converted JTS geometries of primitives for a whole session, so that
+ * matching again does not convert unchanged primitives again. Geometries are
+ * keyed by dataset, {@link PrimitiveId} and version. Local edits do not change
+ * the version, so the owner must {@link #invalidate} edited primitives, and
+ * {@link #clear} the cache if the projection changes.
+ * <p>
+ * The least recently used geometries are evicted once the total number of
+ * coordinates exceeds a limit; an evicted geometry is simply converted again
+ * when it is next needed. May be used from several threads at once.
+ * <p>
+ * If a {@link PreparedDataset} is set, geometries found in it are taken from
+ * there instead of being converted.
+ */
+public class GeometryCache {
+    /**
+     * Roughly 50 MB of JTS coordinates.
+     */
+    public static final long DEFAULT_MAX_COORDINATES = 1000000;
+
+    private final long maxCoordinates;
+    private long coordinates = 0;
+    private final LinkedHashMap<Key, Geometry> geometries =
+            new LinkedHashMap<Key, Geometry>(16, 0.75f, true);
+    private Object projection;
+    private PreparedDataset prepared;
+
+    /**
+     * @param maxCoordinates the number of coordinates to keep before evicting
+     * geometries; the most recently added geometry is always kept
+     */
+    public GeometryCache(long maxCoordinates) {
+        this.maxCoordinates = maxCoordinates;
+    }
+
+    /**
+     * Returns the geometry of the primitive, converting it if it is not cached.
+     * @param converter used to convert the primitive; it is only used by one
+     * thread at a time
+     */
+    public Geometry getGeometry(OsmPrimitive prim, JTSConverter converter) {
+        Key key = new Key(prim);
+        Geometry geometry = get(key);
+        if (geometry == null) {
+            PreparedDataset prepared = getPrepared();
+            if (prepared != null)
+                geometry = prepared.getGeometry(prim);
+            if (geometry == null) {
+                synchronized (converter) {
+                    geometry = converter.convert(prim);
+                }
+            }
+            put(key, geometry);
+        }
+        return geometry;
+    }
+
+    private synchronized Geometry get(Key key) {
+        return geometries.get(key);
+    }
+
+    private synchronized void put(Key key, Geometry geometry) {
+        Geometry old = geometries.put(key, geometry);
+        if (old != null)
+            coordinates -= old.getNumPoints();
+        coordinates += geometry.getNumPoints();
+        Iterator<Map.Entry<Key, Geometry>> i = geometries.entrySet().iterator();
+        while (coordinates > maxCoordinates && geometries.size() > 1) {
+            Map.Entry<Key, Geometry> eldest = i.next();
+            coordinates -= eldest.getValue().getNumPoints();
+            i.remove();
+        }
+    }
+
+    /**
+     * Forget the geometries of primitives which have been edited or deleted.
+     */
+    public synchronized void invalidate(Collection<? extends OsmPrimitive> prims) {
+        for (OsmPrimitive prim : prims) {
+            Geometry old = geometries.remove(new Key(prim));
+            if (old != null)
+                coordinates -= old.getNumPoints();
+        }
+    }
+
+    public synchronized void clear() {
+        geometries.clear();
+        coordinates = 0;
+    }
+
+    /**
+     * Clears the cache if the projection differs from the one used so far.
+     */
+    public synchronized void setProjection(Object projection) {
+        if (this.projection != projection)
+            clear();
+        this.projection = projection;
+    }
+
+    /**
+     * @param prepared the dataset to take geometries from, or null
+     */
+    public synchronized void setPrepared(PreparedDataset prepared) {
+        this.prepared = prepared;
+    }
+
+    private synchronized PreparedDataset getPrepared() {
+        return prepared;
+    }
+
+    /**
+     * @return the number of coordinates currently held
+     */
+    public synchronized long getCoordinateCount() {
+        return coordinates;
+    }
+
+    private static final class Key {
+        private final DataSet dataSet;
+        private final PrimitiveId id;
+        private final int version;
+
+        Key(OsmPrimitive prim) {
+            dataSet = prim.getDataSet();
+            id = prim.getPrimitiveId();
+            version = prim.getVersion();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return dataSet == other.dataSet && version == other.version && id.equals(other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id.hashCode() + version;
+        }
+    }
+}
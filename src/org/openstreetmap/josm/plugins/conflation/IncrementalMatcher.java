@@ -0,0 +1,298 @@
+// License: GPL. See LICENSE file for details. Copyright 2012 by Josh Doe and others.
+package org.openstreetmap.josm.plugins.conflation;
+
+import com.vividsolutions.jcs.conflate.polygonmatch.BoundedMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.FeatureMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.Matches;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.MutableIndexedFeatureCollection;
+import java.util.*;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.plugins.jts.JTSConverter;
+
+/**
+ * Keeps the features of a matching run so that the matches can be patched
+ * after primitives are edited, instead of running the whole match finder again.
+ * <p>
+ * Only the features of changed primitives are rebuilt, and only the reference
+ * features (targets) which changed, or whose search window (see
+ * {@link BoundedMatcher}) touches the old or new envelope of a changed subject
+ * feature, are re-scored. The re-scored targets are then given the best
+ * scoring subject which is not already matched, in the same greedy way as
+ * {@link com.vividsolutions.jcs.conflate.polygonmatch.DisambiguatingFCMatchFinder},
+ * so the result can differ slightly from a full run.
+ * <p>
+ * Primitives which have left the match and unmatched lists, for example
+ * because they have been conflated, are not matched again.
+ * <p>
+ * The indexes are only built by {@link #buildIndex}, so that a run which is
+ * never edited does not pay for them. Re-matching is split into
+ * {@link #prepare}, {@link Rematch#score} and {@link Rematch#apply}, so that
+ * the scoring can run off the thread which owns the lists. The methods must
+ * not run concurrently with each other, and only {@link #buildIndex} and
+ * {@link Rematch#score} may run on another thread than the lists' one. Both
+ * read the primitives, so that thread must hold the read locks of their
+ * datasets meanwhile.
+ */
+public class IncrementalMatcher {
+    private FeatureMatcher matcher;
+    private JTSConverter converter = new JTSConverter(true);
+    private SchemaRegistry schemas = new SchemaRegistry();
+    /**
+     * The features of the full run, until the indexes are built
+     */
+    private FeatureCollection initialTargets;
+    private FeatureCollection initialCandidates;
+    /**
+     * Null until the indexes are built
+     */
+    private MutableIndexedFeatureCollection candidates;
+    private Map<OsmPrimitive, OsmFeature> referenceFeatures = new IdentityHashMap<OsmPrimitive, OsmFeature>();
+    private Map<OsmPrimitive, OsmFeature> subjectFeatures = new IdentityHashMap<OsmPrimitive, OsmFeature>();
+
+    /**
+     * The search window of each target which has one, indexed by window.
+     */
+    private Quadtree targetWindows = new Quadtree();
+    private Map<OsmFeature, Envelope> windows = new IdentityHashMap<OsmFeature, Envelope>();
+
+    /**
+     * Targets without a search window, which any change could affect.
+     */
+    private Set<OsmFeature> unboundedTargets =
+            Collections.newSetFromMap(new IdentityHashMap<OsmFeature, Boolean>());
+
+    /**
+     * @param matcher the matcher used for the full run, usually a ChainMatcher
+     * @param targets the reference features of the full run
+     * @param candidates the subject features of the full run; they are
+     * copied into an index of their own, so the collection may be indexed
+     * in any way
+     */
+    public IncrementalMatcher(FeatureMatcher matcher, FeatureCollection targets,
+            FeatureCollection candidates) {
+        this.matcher = matcher;
+        this.initialTargets = targets;
+        this.initialCandidates = candidates;
+    }
+
+    public boolean isIndexed() {
+        return candidates != null;
+    }
+
+    /**
+     * Indexes the candidates and the search windows of the targets, if that
+     * has not been done yet. Must be called before any other method.
+     */
+    public void buildIndex() {
+        if (candidates != null)
+            return;
+        for (Iterator i = initialTargets.iterator(); i.hasNext();) {
+            addTarget((OsmFeature) i.next());
+        }
+        for (Iterator i = initialCandidates.iterator(); i.hasNext();) {
+            OsmFeature subject = (OsmFeature) i.next();
+            subjectFeatures.put(subject.getPrimitive(), subject);
+        }
+        candidates = new MutableIndexedFeatureCollection(initialCandidates);
+        initialTargets = null;
+        initialCandidates = null;
+    }
+
+    /**
+     * Rebuilds the features of the given primitives and finds the targets
+     * they affect. Primitives which are not part of the run are ignored.
+     * @param changed primitives whose tags or geometry have changed
+     * @param matches the match list
+     * @param referenceOnly the unmatched reference objects
+     * @param subjectOnly the unmatched subject objects
+     * @return the targets to re-match, or null if there are none
+     */
+    public Rematch prepare(Collection<? extends OsmPrimitive> changed, SimpleMatchList matches,
+            UnmatchedObjectListModel referenceOnly, UnmatchedObjectListModel subjectOnly) {
+        Set<OsmFeature> affected = Collections.newSetFromMap(new IdentityHashMap<OsmFeature, Boolean>());
+        for (OsmPrimitive p : changed) {
+            if (p.isDeleted() || p.isIncomplete())
+                continue;
+            OsmFeature target = referenceFeatures.get(p);
+            if (target != null && isOpenReference(p, matches, referenceOnly)) {
+                removeTarget(target);
+                target = new OsmFeature(p, converter, schemas);
+                addTarget(target);
+                affected.add(target);
+            }
+            OsmFeature subject = subjectFeatures.get(p);
+            if (subject != null && isOpenSubject(p, matches, subjectOnly)) {
+                addTargetsTouching(subject.getEnvelope(), affected);
+                candidates.remove(subject);
+                subject = new OsmFeature(p, converter, schemas);
+                candidates.add(subject);
+                subjectFeatures.put(p, subject);
+                addTargetsTouching(subject.getEnvelope(), affected);
+                // whichever target had this subject must look for another
+                SimpleMatch match = matches.getMatchBySubject(p);
+                if (match != null && referenceFeatures.containsKey(match.getReferenceObject()))
+                    affected.add(referenceFeatures.get(match.getReferenceObject()));
+            }
+        }
+        for (Iterator<OsmFeature> i = affected.iterator(); i.hasNext();) {
+            if (!isOpenReference(i.next().getPrimitive(), matches, referenceOnly))
+                i.remove();
+        }
+        if (affected.isEmpty())
+            return null;
+        return new Rematch(new ArrayList<OsmFeature>(affected));
+    }
+
+    private static boolean isOpenReference(OsmPrimitive p, SimpleMatchList matches,
+            UnmatchedObjectListModel referenceOnly) {
+        return matches.hasMatchForReference(p) || referenceOnly.contains(p);
+    }
+
+    private static boolean isOpenSubject(OsmPrimitive p, SimpleMatchList matches,
+            UnmatchedObjectListModel subjectOnly) {
+        return matches.hasMatchForSubject(p) || subjectOnly.contains(p);
+    }
+
+    /**
+     * Forgets primitives which have been deleted. Their matches are not
+     * touched.
+     */
+    public void primitivesRemoved(Collection<? extends OsmPrimitive> removed) {
+        for (OsmPrimitive p : removed) {
+            OsmFeature target = referenceFeatures.remove(p);
+            if (target != null)
+                removeTarget(target);
+            OsmFeature subject = subjectFeatures.remove(p);
+            if (subject != null)
+                candidates.remove(subject);
+        }
+    }
+
+    /**
+     * The re-matching of the targets affected by one batch of edits.
+     */
+    public class Rematch {
+        private final List<OsmFeature> targets;
+        private List<SimpleMatch> scored;
+
+        private Rematch(List<OsmFeature> targets) {
+            this.targets = targets;
+        }
+
+        /**
+         * Scores the targets against the candidates. Does not use the lists,
+         * so it may run on another thread, holding the datasets' read locks.
+         */
+        public void score() {
+            List<SimpleMatch> scored = new ArrayList<SimpleMatch>();
+            for (OsmFeature target : targets) {
+                Matches targetMatches = matcher.match(target, candidates);
+                for (int i = 0; i < targetMatches.size(); i++) {
+                    OsmPrimitive subject = ((OsmFeature) targetMatches.getFeature(i)).getPrimitive();
+                    scored.add(new SimpleMatch(target.getPrimitive(), subject,
+                            targetMatches.getScore(i)));
+                }
+            }
+            Collections.sort(scored, new Comparator<SimpleMatch>() {
+                @Override
+                public int compare(SimpleMatch a, SimpleMatch b) {
+                    return Double.compare((Double) b.getScore(), (Double) a.getScore());
+                }
+            });
+            this.scored = scored;
+        }
+
+        /**
+         * Replaces the matches of the targets by the best scoring subjects
+         * which are free now, and updates the unmatched lists to suit.
+         * Targets which have left the lists since {@link #prepare} are
+         * skipped.
+         */
+        public void apply(SimpleMatchList matches,
+                UnmatchedObjectListModel referenceOnly, UnmatchedObjectListModel subjectOnly) {
+            rematch(targets, scored, matches, referenceOnly, subjectOnly);
+        }
+    }
+
+    private static void rematch(List<OsmFeature> targets, List<SimpleMatch> scored, SimpleMatchList matches,
+            UnmatchedObjectListModel referenceOnly, UnmatchedObjectListModel subjectOnly) {
+        Set<OsmPrimitive> openTargets = Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
+        List<SimpleMatch> oldMatches = new ArrayList<SimpleMatch>();
+        for (OsmFeature target : targets) {
+            if (!isOpenReference(target.getPrimitive(), matches, referenceOnly))
+                continue;
+            openTargets.add(target.getPrimitive());
+            SimpleMatch match = matches.getMatchByReference(target.getPrimitive());
+            if (match != null)
+                oldMatches.add(match);
+        }
+        matches.removeAll(oldMatches);
+        Set<OsmPrimitive> freedSubjects = Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
+        for (SimpleMatch match : oldMatches) {
+            freedSubjects.add(match.getSubjectObject());
+        }
+
+        Set<OsmPrimitive> matchedReferences = Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
+        Set<OsmPrimitive> matchedSubjects = Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
+        List<SimpleMatch> newMatches = new ArrayList<SimpleMatch>();
+        for (SimpleMatch match : scored) {
+            if (!openTargets.contains(match.getReferenceObject()) ||
+                    matchedReferences.contains(match.getReferenceObject()) ||
+                    matchedSubjects.contains(match.getSubjectObject()))
+                continue;
+            if (!freedSubjects.contains(match.getSubjectObject()) &&
+                    !subjectOnly.contains(match.getSubjectObject()))
+                continue;
+            matchedReferences.add(match.getReferenceObject());
+            matchedSubjects.add(match.getSubjectObject());
+            newMatches.add(match);
+        }
+        matches.addAll(newMatches);
+
+        referenceOnly.removeAll(matchedReferences);
+        subjectOnly.removeAll(matchedSubjects);
+        List<OsmPrimitive> unmatchedReferences = new ArrayList<OsmPrimitive>();
+        List<OsmPrimitive> unmatchedSubjects = new ArrayList<OsmPrimitive>();
+        for (SimpleMatch match : oldMatches) {
+            if (!matchedReferences.contains(match.getReferenceObject()))
+                unmatchedReferences.add(match.getReferenceObject());
+            if (!matchedSubjects.contains(match.getSubjectObject()))
+                unmatchedSubjects.add(match.getSubjectObject());
+        }
+        referenceOnly.addAll(unmatchedReferences);
+        subjectOnly.addAll(unmatchedSubjects);
+    }
+
+    private void addTargetsTouching(Envelope envelope, Set<OsmFeature> targets) {
+        for (Object o : targetWindows.query(envelope)) {
+            OsmFeature target = (OsmFeature) o;
+            if (windows.get(target).intersects(envelope))
+                targets.add(target);
+        }
+        targets.addAll(unboundedTargets);
+    }
+
+    private void addTarget(OsmFeature target) {
+        referenceFeatures.put(target.getPrimitive(), target);
+        Envelope window = matcher instanceof BoundedMatcher
+                ? ((BoundedMatcher) matcher).searchEnvelope(target) : null;
+        if (window == null) {
+            unboundedTargets.add(target);
+        } else {
+            windows.put(target, window);
+            targetWindows.insert(window, target);
+        }
+    }
+
+    private void removeTarget(Feature target) {
+        Envelope window = windows.remove(target);
+        if (window == null)
+            unboundedTargets.remove(target);
+        else
+            targetWindows.remove(window, target);
+    }
+}
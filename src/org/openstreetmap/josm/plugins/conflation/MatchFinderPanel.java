@@ -27,19 +27,27 @@ public class MatchFinderPanel extends JPanel {
         add(centroidDistanceComponent);
     }
 
-    public FCMatchFinder getMatchFinder() {
+    /**
+     * @return the matcher that scores the candidates for each target
+     */
+    public ChainMatcher getFeatureMatcher() {
         IdenticalFeatureFilter identical = new IdenticalFeatureFilter();
         FeatureMatcher[] matchers = {centroidDistanceComponent.getFeatureMatcher(), identical};
         ChainMatcher chain = new ChainMatcher(matchers);
-        BasicFCMatchFinder basicFinder = new BasicFCMatchFinder(chain);
+        chain.setFused(true);
+        return chain;
+    }
+
+    public FCMatchFinder getMatchFinder() {
+        ParallelFCMatchFinder parallelFinder = new ParallelFCMatchFinder(getFeatureMatcher());
         FCMatchFinder finder;
         // FIXME: use better method of specifying match finder
         if (matchFinderComboBox.getSelectedItem().equals("DisambiguatingFCMatchFinder"))
-            finder = new DisambiguatingFCMatchFinder(basicFinder);
+            finder = new DisambiguatingFCMatchFinder(parallelFinder);
         else if (matchFinderComboBox.getSelectedItem().equals("OneToOneFCMatchFinder"))
-            finder = new OneToOneFCMatchFinder(basicFinder);
+            finder = new OneToOneFCMatchFinder(parallelFinder);
         else
-            finder = new DisambiguatingFCMatchFinder(basicFinder);
+            finder = new DisambiguatingFCMatchFinder(parallelFinder);
         return finder;
     }
 
@@ -1,11 +1,19 @@
 // License: GPL. See LICENSE file for details. Copyright 2012 by Josh Doe and others.
 package org.openstreetmap.josm.plugins.conflation;
 
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jump.feature.AbstractBasicFeature;
-import com.vividsolutions.jump.feature.AttributeType;
-import com.vividsolutions.jump.feature.FeatureSchema;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.plugins.jts.JTSConverter;
 
 public class OsmFeature extends AbstractBasicFeature {
@@ -14,44 +22,144 @@ public class OsmFeature extends AbstractBasicFeature {
     private JTSConverter converter;
 
     /**
-     * Create a copy of the OSM geometry
+     * Set only for lazily converted features, which keep their geometry there
+     * rather than in the attributes
+     */
+    private GeometryCache geometryCache;
+    private Envelope envelope;
+
+    /**
+     * Create a copy of the OSM geometry, with a schema of its own
      * TODO: update from underlying primitive
      * @param prim 
      */
     public OsmFeature(OsmPrimitive prim, JTSConverter jtsConverter) {
-        super(new FeatureSchema());
+        this(prim, jtsConverter, new SchemaRegistry());
+    }
+
+    /**
+     * Create a copy of the OSM geometry, sharing its schema with the other
+     * features from the registry that have the same keys
+     * @param prim 
+     */
+    public OsmFeature(OsmPrimitive prim, JTSConverter jtsConverter, SchemaRegistry schemas) {
+        this(prim, prim.getKeys(), jtsConverter, schemas, null, false);
+    }
+
+    /**
+     * Create a feature whose OSM geometry is taken from the cache, or
+     * converted and added to it. A lazy feature only does so when its
+     * geometry is first asked for, and until then works out its envelope from
+     * the east/north coordinates of the primitive's nodes.
+     * @param prim 
+     */
+    public OsmFeature(OsmPrimitive prim, JTSConverter jtsConverter, SchemaRegistry schemas,
+            GeometryCache geometryCache, boolean lazy) {
+        this(prim, prim.getKeys(), jtsConverter, schemas, geometryCache, lazy);
+    }
+
+    private OsmFeature(OsmPrimitive prim, Map<String, String> keys,
+            JTSConverter jtsConverter, SchemaRegistry schemas, GeometryCache geometryCache, boolean lazy) {
+        super(schemas.getSchema(sortedKeys(keys)));
         primitive = prim;
-        Map<String, String> keys = prim.getKeys();
-        attributes = new Object[keys.size() + 1];
-        getSchema().addAttribute("GEOMETRY", AttributeType.GEOMETRY);
-        for (String key : keys.keySet()) {
-            getSchema().addAttribute(key, AttributeType.STRING);
-            setAttribute(key, keys.get(key));
+        // values follow the schema: geometry, then the keys in sorted order
+        attributes = new Object[getSchema().getAttributeCount()];
+        for (int i = 1; i < attributes.length; i++) {
+            attributes[i] = keys.get(getSchema().getAttributeName(i));
         }
         if (jtsConverter != null)
             converter = jtsConverter;
         else
             converter = new JTSConverter(true);
-        setGeometry(converter.convert(prim));
+        if (geometryCache == null) {
+            setGeometry(converter.convert(prim));
+        } else if (!lazy) {
+            setGeometry(geometryCache.getGeometry(prim, converter));
+        } else {
+            this.geometryCache = geometryCache;
+            envelope = new Envelope();
+            expandToInclude(envelope, prim, null);
+        }
+    }
+
+    /**
+     * Expand the envelope by the coordinates the converter would use, i.e.
+     * east/north rather than the lat/lon of {@link OsmPrimitive#getBBox()}.
+     */
+    private static void expandToInclude(Envelope envelope, OsmPrimitive prim, Set<OsmPrimitive> visited) {
+        if (prim instanceof Node) {
+            EastNorth en = ((Node) prim).getEastNorth();
+            if (en != null)
+                envelope.expandToInclude(en.east(), en.north());
+        } else if (prim instanceof Way) {
+            for (Node node : ((Way) prim).getNodes()) {
+                expandToInclude(envelope, node, visited);
+            }
+        } else if (prim instanceof Relation) {
+            // relations may contain themselves
+            if (visited == null)
+                visited = new HashSet<OsmPrimitive>();
+            if (!visited.add(prim))
+                return;
+            for (RelationMember member : ((Relation) prim).getMembers()) {
+                expandToInclude(envelope, member.getMember(), visited);
+            }
+        }
+    }
+
+    private Geometry getLazyGeometry() {
+        return geometryCache.getGeometry(primitive, converter);
+    }
+
+    @Override
+    public Envelope getEnvelope() {
+        if (envelope != null)
+            return envelope;
+        return super.getEnvelope();
+    }
+
+    private static String[] sortedKeys(Map<String, String> keys) {
+        String[] sorted = keys.keySet().toArray(new String[keys.size()]);
+        Arrays.sort(sorted);
+        return sorted;
     }
 
     @Override
     public void setAttributes(Object[] attributes) {
+        if (geometryCache != null && attributes[0] != null) {
+            geometryCache = null;
+            envelope = null;
+        }
         this.attributes = attributes;
+        geometryChanged();
     }
 
     @Override
     public void setAttribute(int attributeIndex, Object newAttribute) {
+        if (attributeIndex == 0 && geometryCache != null) {
+            // an explicitly set geometry is kept and never evicted
+            geometryCache = null;
+            envelope = null;
+        }
         attributes[attributeIndex] = newAttribute;
+        if (attributeIndex == 0)
+            geometryChanged();
     }
 
     @Override
     public Object getAttribute(int i) {
+        if (i == 0 && geometryCache != null)
+            return getLazyGeometry();
         return attributes[i];
     }
 
     @Override
     public Object[] getAttributes() {
+        if (geometryCache != null) {
+            Object[] copy = attributes.clone();
+            copy[0] = getLazyGeometry();
+            return copy;
+        }
         return attributes;
     }
     
@@ -0,0 +1,240 @@
+// License: GPL. See LICENSE file for details. Copyright 2012 by Josh Doe and others.
+package org.openstreetmap.josm.plugins.conflation;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jump.feature.ColumnarFeatureCollection;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * A dataset whose features have been converted once and saved as a
+ * {@link ColumnarFeatureCollection} file, so that later sessions can take the
+ * geometries of its primitives from the memory-mapped file instead of
+ * converting them again.
+ * <p>
+ * Primitives are looked up by a fingerprint of their tags and projected
+ * coordinates rather than by id, since new objects are given new ids each time
+ * a file is loaded. A primitive whose geometry or tags have changed, or a
+ * different projection, simply gives no match. Since two primitives may share
+ * a fingerprint, a feature found is only used if its coordinate count and
+ * envelope also agree with the primitive's nodes.
+ * <p>
+ * A dataset written from other data, or from data which has since been
+ * edited, gives fewer matches; {@link #isPreparedFrom} tells whether it
+ * should be written again.
+ * <p>
+ * This is a cache of converted geometries only: the features are still
+ * created from the primitives, and matched in memory, so no spatial index is
+ * saved with them.
+ */
+public class PreparedDataset {
+    private final ColumnarFeatureCollection features;
+    private final long seed;
+
+    private PreparedDataset(ColumnarFeatureCollection features, String projectionCode) {
+        this.features = features;
+        this.seed = projectionCode.hashCode();
+    }
+
+    /**
+     * @param projectionCode the code of the current projection
+     */
+    public static PreparedDataset open(File file, String projectionCode) throws IOException {
+        return new PreparedDataset(ColumnarFeatureCollection.open(file), projectionCode);
+    }
+
+    /**
+     * Writes the features, which must be {@link OsmFeature}s, for
+     * {@link #open}. Their geometries are converted if they have not been yet.
+     * An existing file is replaced only once the new one is complete, so a
+     * dataset opened from it can still be read.
+     * @param features features with a schema holding all their keys
+     * @param projectionCode the code of the current projection
+     */
+    public static void write(File file, FeatureCollection features, String projectionCode) throws IOException {
+        final long seed = projectionCode.hashCode();
+        final Map<Feature, Long> keys = new IdentityHashMap<Feature, Long>();
+        List<Feature> sorted = new ArrayList<Feature>(features.size());
+        for (Iterator i = features.iterator(); i.hasNext();) {
+            OsmFeature feature = (OsmFeature) i.next();
+            keys.put(feature, fingerprint(feature.getPrimitive(), seed));
+            sorted.add(feature);
+        }
+        // sorted by key, so that keys can be found by binary search
+        Collections.sort(sorted, new Comparator<Feature>() {
+            @Override
+            public int compare(Feature a, Feature b) {
+                long ka = keys.get(a);
+                long kb = keys.get(b);
+                return ka < kb ? -1 : (ka == kb ? 0 : 1);
+            }
+        });
+        ColumnarFeatureCollection store = new ColumnarFeatureCollection(
+                features.getFeatureSchema(), new GeometryFactory(), true);
+        for (Feature feature : sorted) {
+            store.add(feature, keys.get(feature));
+        }
+        // a new file rather than rewriting the old one, which may be mapped
+        File temp = new File(file.getPath() + ".tmp");
+        store.write(temp);
+        if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /**
+     * @param features features with the same projection, which must be
+     * {@link OsmFeature}s
+     * @return true if the dataset holds a feature for each of the features'
+     * primitives as they are now, and no others
+     */
+    public boolean isPreparedFrom(FeatureCollection features) {
+        if (features.size() != size())
+            return false;
+        for (Iterator i = features.iterator(); i.hasNext();) {
+            if (indexOf(fingerprint(((OsmFeature) i.next()).getPrimitive(), seed)) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the prepared geometry of the primitive, or null if the dataset
+     * has no feature with the same tags and geometry
+     */
+    public Geometry getGeometry(OsmPrimitive prim) {
+        long key = fingerprint(prim, seed);
+        int first = indexOf(key);
+        if (first < 0)
+            return null;
+        Envelope envelope = new Envelope();
+        int nodeCount = expandToInclude(envelope, prim, null);
+        for (int i = first; i < features.size() && features.getKey(i) == key; i++) {
+            if (agrees(i, prim, envelope, nodeCount))
+                return features.getFeature(i).getGeometry();
+        }
+        return null;
+    }
+
+    /**
+     * @return the index of the first feature with the key, or -1 if there is
+     * none
+     */
+    private int indexOf(long key) {
+        int low = 0;
+        int high = features.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (features.getKey(mid) < key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low < features.size() && features.getKey(low) == key ? low : -1;
+    }
+
+    /**
+     * Checks a feature found by fingerprint against the primitive, so that a
+     * fingerprint shared with another primitive gives no match rather than
+     * the wrong geometry. A relation's geometry need not use all of its
+     * members, so it only has to lie within them.
+     * @param envelope the east/north envelope of the primitive's nodes
+     * @param nodeCount the number of nodes in the primitive
+     */
+    private boolean agrees(int index, OsmPrimitive prim, Envelope envelope, int nodeCount) {
+        int coordinateCount = features.getCoordinateCount(index);
+        Envelope featureEnvelope = features.getEnvelope(index);
+        if (prim instanceof Relation)
+            return coordinateCount <= nodeCount && envelope.contains(featureEnvelope);
+        return coordinateCount == nodeCount && envelope.equals(featureEnvelope);
+    }
+
+    /**
+     * Expands the envelope by the east/north coordinates of the primitive's
+     * nodes, as {@link OsmFeature} does.
+     * @return the number of nodes with coordinates, counting a node each time
+     * it is used
+     */
+    private static int expandToInclude(Envelope envelope, OsmPrimitive prim, Set<OsmPrimitive> visited) {
+        if (prim instanceof Node) {
+            EastNorth en = ((Node) prim).getEastNorth();
+            if (en == null)
+                return 0;
+            envelope.expandToInclude(en.east(), en.north());
+            return 1;
+        }
+        int count = 0;
+        if (prim instanceof Way) {
+            for (Node node : ((Way) prim).getNodes()) {
+                count += expandToInclude(envelope, node, visited);
+            }
+        } else if (prim instanceof Relation) {
+            // relations may contain themselves
+            if (visited == null)
+                visited = new HashSet<OsmPrimitive>();
+            if (!visited.add(prim))
+                return 0;
+            for (RelationMember member : ((Relation) prim).getMembers()) {
+                count += expandToInclude(envelope, member.getMember(), visited);
+            }
+        }
+        return count;
+    }
+
+    public int size() {
+        return features.size();
+    }
+
+    private static long fingerprint(OsmPrimitive prim, long seed) {
+        return fingerprint(hash(seed, prim.getKeys().hashCode()), prim, null);
+    }
+
+    private static long fingerprint(long h, OsmPrimitive prim, Set<OsmPrimitive> visited) {
+        if (prim instanceof Node) {
+            EastNorth en = ((Node) prim).getEastNorth();
+            if (en == null)
+                return hash(h, 0);
+            h = hash(h, 1);
+            h = hash(h, Double.doubleToLongBits(en.east()));
+            return hash(h, Double.doubleToLongBits(en.north()));
+        } else if (prim instanceof Way) {
+            List<Node> nodes = ((Way) prim).getNodes();
+            h = hash(hash(h, 2), nodes.size());
+            for (Node node : nodes) {
+                h = fingerprint(h, node, visited);
+            }
+            return h;
+        } else if (prim instanceof Relation) {
+            // relations may contain themselves
+            if (visited == null)
+                visited = new HashSet<OsmPrimitive>();
+            if (!visited.add(prim))
+                return hash(h, 4);
+            List<RelationMember> members = ((Relation) prim).getMembers();
+            h = hash(hash(h, 3), members.size());
+            for (RelationMember member : members) {
+                h = hash(h, member.getRole().hashCode());
+                h = fingerprint(h, member.getMember(), visited);
+            }
+            return h;
+        }
+        return h;
+    }
+
+    private static long hash(long h, long value) {
+        h = (h ^ value) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+}
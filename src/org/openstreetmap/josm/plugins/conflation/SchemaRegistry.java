@@ -0,0 +1,58 @@
+// License: GPL. See LICENSE file for details. Copyright 2012 by Josh Doe and others.
+package org.openstreetmap.josm.plugins.conflation;
+
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import java.util.*;
+
+/**
+ * Shares one {@link FeatureSchema} between all the {@link OsmFeature}s whose
+ * primitives have the same set of keys, so that each feature only needs to
+ * hold its values. The geometry is always attribute 0, followed by the keys
+ * in sorted order.
+ */
+public class SchemaRegistry {
+    public static final String GEOMETRY_ATTRIBUTE = "GEOMETRY";
+
+    private Map<List<String>, FeatureSchema> schemas = new HashMap<List<String>, FeatureSchema>();
+    private SortedSet<String> allKeys = new TreeSet<String>();
+
+    /**
+     * Returns the schema for the given keys, creating it on first use.
+     * @param sortedKeys the keys of a primitive, in sorted order
+     */
+    public synchronized FeatureSchema getSchema(String[] sortedKeys) {
+        List<String> keyList = Arrays.asList(sortedKeys);
+        FeatureSchema schema = schemas.get(keyList);
+        if (schema == null) {
+            schema = new FeatureSchema();
+            schema.addAttribute(GEOMETRY_ATTRIBUTE, AttributeType.GEOMETRY);
+            for (String key : sortedKeys) {
+                schema.addAttribute(key, AttributeType.STRING);
+            }
+            schemas.put(keyList, schema);
+            allKeys.addAll(keyList);
+        }
+        return schema;
+    }
+
+    /**
+     * @return the number of distinct key sets seen so far
+     */
+    public synchronized int size() {
+        return schemas.size();
+    }
+
+    /**
+     * Creates a schema with every key seen so far, for a collection holding
+     * all of the features.
+     */
+    public synchronized FeatureSchema createUnionSchema() {
+        FeatureSchema schema = new FeatureSchema();
+        schema.addAttribute(GEOMETRY_ATTRIBUTE, AttributeType.GEOMETRY);
+        for (String key : allKeys) {
+            schema.addAttribute(key, AttributeType.STRING);
+        }
+        return schema;
+    }
+}
@@ -129,6 +129,7 @@ public class SettingsDialog extends ExtendedDialog {
         settings.setSubjectLayer(subjectLayer);
         settings.setSubjectSelection(subjectSelection);
         settings.setMatchFinder(matchFinderPanel.getMatchFinder());
+        settings.setFeatureMatcher(matchFinderPanel.getFeatureMatcher());
         
         return settings;
     }
@@ -7,6 +7,10 @@ import org.openstreetmap.josm.data.osm.OsmPrimitive;
 
 /**
  *  Holds a list of {@see Match}es and provides convenience functions.
+ *  <p>
+ *  Matches are looked up by row, by reference object and by subject object in
+ *  constant time, so that a table model can call {@link #get} for every cell.
+ *  If several matches share a primitive, the first one in the list is found.
  */
 public class SimpleMatchList implements Iterable<SimpleMatch> {
     private CopyOnWriteArrayList<SimpleMatchListListener> listeners = new CopyOnWriteArrayList<SimpleMatchListListener>();
@@ -14,8 +18,15 @@ public class SimpleMatchList implements Iterable<SimpleMatch> {
     List<SimpleMatch> matches;
     Collection<SimpleMatch> selected;
 
+    private Map<OsmPrimitive, SimpleMatch> byReference = new IdentityHashMap<OsmPrimitive, SimpleMatch>();
+    private Map<OsmPrimitive, SimpleMatch> bySubject = new IdentityHashMap<OsmPrimitive, SimpleMatch>();
+    /**
+     * The row of each match, rebuilt on demand after matches are removed.
+     */
+    private Map<SimpleMatch, Integer> positions = new IdentityHashMap<SimpleMatch, Integer>();
+
     public SimpleMatchList() {
-        matches = new LinkedList<SimpleMatch>();
+        matches = new ArrayList<SimpleMatch>();
         selected = new ArrayList<SimpleMatch>();
     }
 
@@ -36,26 +47,19 @@ public class SimpleMatchList implements Iterable<SimpleMatch> {
     }
 
     public SimpleMatch getMatchByReference(OsmPrimitive referenceObject) {
-        for (SimpleMatch c : matches) {
-            if (c.getReferenceObject() == referenceObject) {
-                return c;
-            }
-        }
-        return null;
+        return byReference.get(referenceObject);
     }
 
     public SimpleMatch getMatchBySubject(OsmPrimitive subjectObject) {
-        for (SimpleMatch c : matches) {
-            if (c.getSubjectObject() == subjectObject) {
-                return c;
-            }
-        }
-        return null;
+        return bySubject.get(subjectObject);
     }
 
+    /**
+     * The matches may not be removed through the returned iterator.
+     */
     @Override
     public Iterator<SimpleMatch> iterator() {
-        return matches.iterator();
+        return Collections.unmodifiableList(matches).iterator();
     }
 
     public boolean add(SimpleMatch c) {
@@ -63,12 +67,35 @@ public class SimpleMatchList implements Iterable<SimpleMatch> {
     }
     
     public boolean addAll(Collection<SimpleMatch> toAdd) {
-        boolean changed = matches.addAll(toAdd);
+        boolean changed = false;
+        for (SimpleMatch c : toAdd) {
+            if (positions != null && !positions.containsKey(c))
+                positions.put(c, matches.size());
+            matches.add(c);
+            index(c);
+            changed = true;
+        }
         if (changed)
             fireListChanged();
         return changed;
     }
 
+    private void index(SimpleMatch c) {
+        if (!byReference.containsKey(c.getReferenceObject()))
+            byReference.put(c.getReferenceObject(), c);
+        if (!bySubject.containsKey(c.getSubjectObject()))
+            bySubject.put(c.getSubjectObject(), c);
+    }
+
+    private void reindex() {
+        byReference.clear();
+        bySubject.clear();
+        positions = null;
+        for (SimpleMatch c : matches) {
+            index(c);
+        }
+    }
+
     public int size() {
         return matches.size();
     }
@@ -78,7 +105,15 @@ public class SimpleMatchList implements Iterable<SimpleMatch> {
     }
     
     public int indexOf(SimpleMatch match) {
-        return matches.indexOf(match);
+        if (positions == null) {
+            positions = new IdentityHashMap<SimpleMatch, Integer>();
+            for (int i = 0; i < matches.size(); i++) {
+                if (!positions.containsKey(matches.get(i)))
+                    positions.put(matches.get(i), i);
+            }
+        }
+        Integer position = positions.get(match);
+        return position != null ? position : -1;
     }
     
     /**
@@ -88,6 +123,7 @@ public class SimpleMatchList implements Iterable<SimpleMatch> {
         if (matches.size() > 0) {
             setSelected(new ArrayList<SimpleMatch>());
             matches.clear();
+            reindex();
             fireListChanged();
         }
     }
@@ -97,41 +133,66 @@ public class SimpleMatchList implements Iterable<SimpleMatch> {
     }
     
     public SimpleMatch findNextSelection() {
-        SimpleMatch next = null;
+        return findNextSelection(Collections.<SimpleMatch>emptySet());
+    }
+
+    /**
+     * Finds the match to select once the selection is gone: the first
+     * one-row gap in the selection, else the row after the selection, else
+     * the row before it. Rows in {@code removed} are skipped. The selected
+     * rows are looked up through {@link #indexOf}, so this takes time in the
+     * size of the selection rather than of the list.
+     */
+    private SimpleMatch findNextSelection(Set<SimpleMatch> removed) {
+        int[] rows = new int[selected.size()];
+        int count = 0;
+        for (SimpleMatch c : selected) {
+            int row = indexOf(c);
+            if (row >= 0)
+                rows[count++] = row;
+        }
+        if (count == 0)
+            return null;
+        Arrays.sort(rows, 0, count);
+
         // if gap in selection exists, use that as the next selection
-        for (int i = 1; i < matches.size() - 1; i++) {
-            if (selected.contains(matches.get(i - 1)) &&
-                !selected.contains(matches.get(i)) &&
-                selected.contains(matches.get(i + 1))) {
-                next = matches.get(i);
-                break;
+        for (int k = 1; k < count; k++) {
+            if (rows[k] == rows[k - 1] + 2) {
+                SimpleMatch gap = matches.get(rows[k] - 1);
+                if (!removed.contains(gap))
+                    return gap;
             }
         }
-        
-        if (next == null) {
-            int first = matches.size();
-            int last = -1;
-            for (SimpleMatch c : selected) {
-                first = Math.min(first, matches.indexOf(c));
-                last = Math.max(last, matches.indexOf(c));
-            }
-            if (last + 1 < matches.size())
-                next = matches.get(last + 1);
-            else if (first - 1 >= 0)
-                next = matches.get(first - 1);
-            else
-                next = null;
+
+        for (int i = rows[count - 1] + 1; i < matches.size(); i++) {
+            if (!removed.contains(matches.get(i)))
+                return matches.get(i);
         }
-        
-        return next;
+        for (int i = rows[0] - 1; i >= 0; i--) {
+            if (!removed.contains(matches.get(i)))
+                return matches.get(i);
+        }
+        return null;
     }
     
     public boolean removeAll(Collection<SimpleMatch> matchesToRemove) {
+        Set<SimpleMatch> toRemove = Collections.newSetFromMap(new IdentityHashMap<SimpleMatch, Boolean>());
+        toRemove.addAll(matchesToRemove);
         // find next to select if entire selection is removed
-        SimpleMatch next = findNextSelection();
-        
-        boolean ret = matches.removeAll(matchesToRemove);
-        if (selected.removeAll(matchesToRemove)) {
+        SimpleMatch next = findNextSelection(toRemove);
+        boolean ret = false;
+        List<SimpleMatch> kept = new ArrayList<SimpleMatch>(matches.size());
+        for (SimpleMatch c : matches) {
+            if (toRemove.contains(c))
+                ret = true;
+            else
+                kept.add(c);
+        }
+        if (ret) {
+            matches = kept;
+            reindex();
+        }
+        if (selected.removeAll(toRemove)) {
         
             if (selected.isEmpty() && next != null)
                 selected.add(next);
@@ -145,6 +206,24 @@ public class SimpleMatchList implements Iterable<SimpleMatch> {
         return ret;
     }
     
+    /**
+     * Removes the matches of the given primitives, whether as reference or as
+     * subject, firing a single list change.
+     * @return true if any match was removed
+     */
+    public boolean removeAllFor(Collection<? extends OsmPrimitive> prims) {
+        List<SimpleMatch> toRemove = new ArrayList<SimpleMatch>();
+        for (OsmPrimitive p : prims) {
+            SimpleMatch c = byReference.get(p);
+            if (c != null)
+                toRemove.add(c);
+            c = bySubject.get(p);
+            if (c != null)
+                toRemove.add(c);
+        }
+        return !toRemove.isEmpty() && removeAll(toRemove);
+    }
+
     public void addConflationListChangedListener(SimpleMatchListListener listener) {
         listeners.addIfAbsent(listener);
     }
@@ -2,6 +2,7 @@
 package org.openstreetmap.josm.plugins.conflation;
 
 import com.vividsolutions.jcs.conflate.polygonmatch.FCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.FeatureMatcher;
 import java.util.List;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
@@ -19,6 +20,7 @@ public class SimpleMatchSettings {
     private OsmDataLayer subjectLayer;
     private DataSet referenceDataSet;
     private FCMatchFinder matchFinder;
+    private FeatureMatcher featureMatcher;
 
     /**
      * @return the subjectSelection
@@ -117,4 +119,18 @@ public class SimpleMatchSettings {
     public void setMatchFinder(FCMatchFinder matchFinder) {
         this.matchFinder = matchFinder;
     }
+
+    /**
+     * @return the matcher used to re-score targets after an edit
+     */
+    public FeatureMatcher getFeatureMatcher() {
+        return featureMatcher;
+    }
+
+    /**
+     * @param featureMatcher the featureMatcher to set
+     */
+    public void setFeatureMatcher(FeatureMatcher featureMatcher) {
+        this.featureMatcher = featureMatcher;
+    }
 }
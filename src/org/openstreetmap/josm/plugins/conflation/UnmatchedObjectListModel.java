@@ -1,28 +1,168 @@
 // License: GPL. See LICENSE file for details. Copyright 2012 by Josh Doe and others.
 package org.openstreetmap.josm.plugins.conflation;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import javax.swing.DefaultListModel;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.AbstractListModel;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 
 /**
  * List model for unmatched objects, for both subject and reference layers.
+ * <p>
+ * Objects are held in an array together with a map from each object to its
+ * index, so that {@link #contains} is a hash lookup and bulk changes are done
+ * in one pass. Indices from {@code firstStale} on are only brought up to date
+ * when {@link #indexOf} or {@link #removeAll} next needs them, so removing
+ * single rows does not renumber the rest of the list each time.
+ * {@link #addAll} fires a single event, and {@link #removeAll} fires one
+ * removal per run of adjacent removed rows, so the list keeps the selection
+ * and scroll position of the rows that stay. An object is held at most once;
+ * adding one which is already present does nothing.
  * @author joshdoe
  */
-public class UnmatchedObjectListModel extends DefaultListModel {
+public class UnmatchedObjectListModel extends AbstractListModel {
+    private OsmPrimitive[] elements = new OsmPrimitive[16];
+    private int size = 0;
+    private Map<OsmPrimitive, Integer> positions = new IdentityHashMap<OsmPrimitive, Integer>();
+    private int firstStale = 0;
 
-    void addAll(Collection<OsmPrimitive> objects) {
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public Object getElementAt(int index) {
+        return get(index);
+    }
+
+    public OsmPrimitive get(int index) {
+        if (index >= size)
+            throw new ArrayIndexOutOfBoundsException(index);
+        return elements[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(Object p) {
+        return positions.containsKey(p);
+    }
+
+    /**
+     * @return the index of the object, or -1 if it is not in the list
+     */
+    public int indexOf(Object p) {
+        Integer position = positions.get(p);
+        if (position == null)
+            return -1;
+        if (position >= firstStale) {
+            reindex();
+            position = positions.get(p);
+        }
+        return position;
+    }
+
+    private void reindex() {
+        for (int i = firstStale; i < size; i++) {
+            positions.put(elements[i], i);
+        }
+        firstStale = size;
+    }
+
+    public void addElement(OsmPrimitive p) {
+        if (append(p))
+            fireIntervalAdded(this, size - 1, size - 1);
+    }
+
+    void addAll(Collection<? extends OsmPrimitive> objects) {
+        int first = size;
+        ensureCapacity(size + objects.size());
         for (OsmPrimitive p : objects) {
-            addElement(p);
+            append(p);
         }
+        if (size > first)
+            fireIntervalAdded(this, first, size - 1);
+    }
+
+    private boolean append(OsmPrimitive p) {
+        if (positions.containsKey(p))
+            return false;
+        ensureCapacity(size + 1);
+        positions.put(p, size);
+        elements[size++] = p;
+        return true;
     }
 
-    boolean removeAll(Collection<OsmPrimitive> objects) {
-        boolean changed = false;
+    private void ensureCapacity(int capacity) {
+        if (capacity > elements.length)
+            elements = Arrays.copyOf(elements, Math.max(capacity, elements.length * 2));
+    }
+
+    public boolean removeElement(Object p) {
+        int index = indexOf(p);
+        if (index < 0)
+            return false;
+        positions.remove(p);
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        elements[--size] = null;
+        firstStale = Math.min(firstStale, index);
+        fireIntervalRemoved(this, index, index);
+        return true;
+    }
+
+    boolean removeAll(Collection<? extends OsmPrimitive> objects) {
+        reindex();
+        int first = size;
         for (OsmPrimitive p : objects) {
-            changed = removeElement(p) || changed;
+            Integer position = positions.remove(p);
+            if (position != null)
+                first = Math.min(first, position);
         }
-        return changed;
+        if (first == size)
+            return false;
+        // runs of removed rows as start and end indices before the removal
+        List<int[]> runs = new ArrayList<int[]>();
+        int oldSize = size;
+        size = first;
+        for (int i = first; i < oldSize; i++) {
+            OsmPrimitive p = elements[i];
+            if (positions.containsKey(p)) {
+                positions.put(p, size);
+                elements[size++] = p;
+            } else if (!runs.isEmpty() && runs.get(runs.size() - 1)[1] == i - 1) {
+                runs.get(runs.size() - 1)[1] = i;
+            } else {
+                runs.add(new int[] {i, i});
+            }
+        }
+        Arrays.fill(elements, size, oldSize, null);
+        firstStale = size;
+        // last run first, so the indices of the earlier runs still hold
+        for (int r = runs.size() - 1; r >= 0; r--) {
+            int[] run = runs.get(r);
+            fireIntervalRemoved(this, run[0], run[1]);
+        }
+        return true;
     }
 
+    public void clear() {
+        if (size == 0)
+            return;
+        int oldSize = size;
+        elements = new OsmPrimitive[16];
+        size = 0;
+        firstStale = 0;
+        positions.clear();
+        fireIntervalRemoved(this, 0, oldSize - 1);
+    }
 }
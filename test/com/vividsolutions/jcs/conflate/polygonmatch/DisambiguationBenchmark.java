@@ -0,0 +1,70 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureMap;
+import com.vividsolutions.jump.task.TaskMonitor;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Times DisambiguatingFCMatchFinder on growing numbers of scored pairs. The
+ * scores come from a stub finder which gives each target its own and the next
+ * three candidates with random scores, so only the one-to-one assignment is
+ * measured.
+ * <p>
+ * Usage: DisambiguationBenchmark [largestTargetCount]
+ */
+public class DisambiguationBenchmark {
+    private static final int CANDIDATES_PER_TARGET = 4;
+
+    public static void main(String[] args) {
+        int largest = args.length > 0 ? Integer.parseInt(args[0]) : 40000;
+        // warm up the JIT before the timed runs
+        run(largest / 4);
+        System.out.println("pairs\tms\tns/pair");
+        for (int targetCount = 5000; targetCount <= largest; targetCount *= 2) {
+            long time = run(targetCount);
+            int pairs = targetCount * CANDIDATES_PER_TARGET;
+            System.out.println(pairs + "\t" + time / 1000000 + "\t" + time / pairs);
+        }
+    }
+
+    /**
+     * @return the nanoseconds taken to disambiguate
+     */
+    private static long run(int targetCount) {
+        FeatureCollection targets = MatchFixtures.polygons(targetCount, 1);
+        FeatureCollection candidates = MatchFixtures.polygons(targetCount, 2);
+        FCMatchFinder finder = new DisambiguatingFCMatchFinder(
+            new RandomScoreFinder(new Random(3)));
+        long start = System.nanoTime();
+        finder.match(targets, candidates, MatchFixtures.SILENT_MONITOR);
+        return System.nanoTime() - start;
+    }
+
+    private static class RandomScoreFinder implements FCMatchFinder {
+        private Random random;
+
+        public RandomScoreFinder(Random random) {
+            this.random = random;
+        }
+
+        public Map match(FeatureCollection targetFC, FeatureCollection candidateFC,
+                TaskMonitor monitor) {
+            List targets = targetFC.getFeatures();
+            List candidates = candidateFC.getFeatures();
+            Map targetToMatchesMap = new FeatureMap(true);
+            for (int i = 0; i < targets.size(); i++) {
+                Matches matches = new Matches(candidateFC.getFeatureSchema());
+                for (int j = 0; j < CANDIDATES_PER_TARGET; j++) {
+                    Feature candidate = (Feature) candidates.get((i + j) % candidates.size());
+                    matches.add(candidate, 0.01 + random.nextDouble() * 0.99);
+                }
+                targetToMatchesMap.put(targets.get(i), matches);
+            }
+            return targetToMatchesMap;
+        }
+    }
+}
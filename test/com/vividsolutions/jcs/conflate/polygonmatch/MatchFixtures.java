@@ -0,0 +1,106 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import com.vividsolutions.jump.task.TaskMonitor;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Random polygon datasets, and a TaskMonitor that ignores everything, for the
+ * checks and benchmarks in this source tree.
+ */
+class MatchFixtures {
+    static final TaskMonitor SILENT_MONITOR = new TaskMonitor() {
+        public void report(String description) {
+        }
+
+        public void report(int itemsDone, int totalItems, String itemDescription) {
+        }
+
+        public void report(Exception exception) {
+        }
+
+        public void allowCancellationRequests() {
+        }
+
+        public boolean isCancelRequested() {
+            return false;
+        }
+    };
+
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+
+    private MatchFixtures() {
+    }
+
+    static FeatureSchema schema() {
+        FeatureSchema schema = new FeatureSchema();
+        schema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+        return schema;
+    }
+
+    /**
+     * Irregular polygons of 8 to 40 vertices and about 30 units across,
+     * scattered so that each has a few others within 50 units.
+     */
+    static FeatureDataset polygons(int count, long seed) {
+        Random random = new Random(seed);
+        FeatureSchema schema = schema();
+        FeatureDataset dataset = new FeatureDataset(schema);
+        double side = Math.sqrt(count) * 40;
+        for (int i = 0; i < count; i++) {
+            double x = random.nextDouble() * side;
+            double y = random.nextDouble() * side;
+            int n = 8 + random.nextInt(33);
+            Coordinate[] ring = new Coordinate[n + 1];
+            for (int j = 0; j < n; j++) {
+                double angle = 2 * Math.PI * j / n;
+                double radius = 12 + random.nextDouble() * 6;
+                ring[j] = new Coordinate(x + radius * Math.cos(angle), y + radius * Math.sin(angle));
+            }
+            ring[n] = new Coordinate(ring[0]);
+            dataset.add(feature(schema, ring));
+        }
+        return dataset;
+    }
+
+    /**
+     * Copies of the polygons, each moved and reshaped a little as another
+     * survey of the same objects would be; about one in ten is left out.
+     */
+    static FeatureDataset perturbed(FeatureCollection polygons, long seed) {
+        Random random = new Random(seed);
+        FeatureSchema schema = schema();
+        FeatureDataset dataset = new FeatureDataset(schema);
+        for (Iterator i = polygons.iterator(); i.hasNext();) {
+            Polygon polygon = (Polygon) ((Feature) i.next()).getGeometry();
+            if (random.nextInt(10) == 0) {
+                continue;
+            }
+            double dx = random.nextDouble() * 6 - 3;
+            double dy = random.nextDouble() * 6 - 3;
+            Coordinate[] ring = polygon.getExteriorRing().getCoordinates();
+            for (int j = 0; j < ring.length - 1; j++) {
+                ring[j] = new Coordinate(ring[j].x + dx + random.nextDouble() * 2 - 1,
+                        ring[j].y + dy + random.nextDouble() * 2 - 1);
+            }
+            ring[ring.length - 1] = new Coordinate(ring[0]);
+            dataset.add(feature(schema, ring));
+        }
+        return dataset;
+    }
+
+    private static Feature feature(FeatureSchema schema, Coordinate[] ring) {
+        BasicFeature feature = new BasicFeature(schema);
+        feature.setGeometry(FACTORY.createPolygon(FACTORY.createLinearRing(ring), null));
+        return feature;
+    }
+}
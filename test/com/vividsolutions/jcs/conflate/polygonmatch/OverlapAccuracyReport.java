@@ -0,0 +1,138 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.util.AffineTransformation;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Reports how far the grid-approximated scores of OverlapMatcher and
+ * SymDiffMatcher (see RasterOverlap) are from the exact ones, and how long
+ * each takes, on pairs of building footprints. Each pair is a rectangle or
+ * L-shape and a copy of it moved by up to 1.5 m, scaled by up to 3% and
+ * turned by up to 3 degrees, except that every fourth pair is a different
+ * building nearby instead.
+ * <p>
+ * Usage: OverlapAccuracyReport [pairCount]
+ */
+public class OverlapAccuracyReport {
+    private static final int[] RESOLUTIONS = { 16, 32, 64, 128 };
+
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+
+    public static void main(String[] args) {
+        int pairCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Random random = new Random(1);
+        Geometry[] references = new Geometry[pairCount];
+        Geometry[] subjects = new Geometry[pairCount];
+        for (int i = 0; i < pairCount; i++) {
+            double x = random.nextDouble() * 10000;
+            double y = random.nextDouble() * 10000;
+            references[i] = footprint(random, x, y);
+            if (i % 4 == 3) {
+                subjects[i] = footprint(random, x + random.nextDouble() * 30 - 15,
+                    y + random.nextDouble() * 30 - 15);
+            } else {
+                subjects[i] = jitter(random, references[i]);
+            }
+        }
+
+        OverlapMatcher exactOverlap = new OverlapMatcher();
+        SymDiffMatcher exactSymDiff = new SymDiffMatcher();
+        double[] overlapScores = new double[pairCount];
+        double[] symDiffScores = new double[pairCount];
+        // once to warm up the JIT, then timed
+        score(exactOverlap, references, subjects, overlapScores);
+        long exactTime = score(exactOverlap, references, subjects, overlapScores);
+        score(exactSymDiff, references, subjects, symDiffScores);
+
+        System.out.println(pairCount + " pairs; exact overlap scoring took "
+            + exactTime / pairCount + " ns per pair");
+        System.out.println("cells\tscore\tmean error\tp99 error\tmax error\tns/pair\tspeed-up");
+        double[] scores = new double[pairCount];
+        for (int r = 0; r < RESOLUTIONS.length; r++) {
+            OverlapMatcher overlap = new OverlapMatcher();
+            overlap.setGridResolution(RESOLUTIONS[r]);
+            score(overlap, references, subjects, scores);
+            long time = score(overlap, references, subjects, scores);
+            System.out.println(RESOLUTIONS[r] + "\toverlap\t" + errors(overlapScores, scores)
+                + "\t" + time / pairCount + "\t" + String.format("%.1fx", (double) exactTime / time));
+
+            SymDiffMatcher symDiff = new SymDiffMatcher();
+            symDiff.setGridResolution(RESOLUTIONS[r]);
+            score(symDiff, references, subjects, scores);
+            System.out.println(RESOLUTIONS[r] + "\tsymdiff\t" + errors(symDiffScores, scores));
+        }
+    }
+
+    /**
+     * @return the nanoseconds taken
+     */
+    private static long score(IndependentCandidateMatcher matcher, Geometry[] references,
+            Geometry[] subjects, double[] scores) {
+        long start = System.nanoTime();
+        for (int i = 0; i < references.length; i++) {
+            scores[i] = matcher.match(references[i], subjects[i]);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return the mean, 99th percentile and greatest absolute difference,
+     * separated by tabs
+     */
+    private static String errors(double[] expected, double[] actual) {
+        double[] errors = new double[expected.length];
+        double sum = 0;
+        for (int i = 0; i < errors.length; i++) {
+            errors[i] = Math.abs(expected[i] - actual[i]);
+            sum += errors[i];
+        }
+        Arrays.sort(errors);
+        return format(sum / errors.length) + "\t" + format(errors[(int) (0.99 * (errors.length - 1))])
+            + "\t" + format(errors[errors.length - 1]);
+    }
+
+    private static String format(double value) {
+        return String.format("%.4f", value);
+    }
+
+    /**
+     * A rectangle or an L-shape, 8 to 30 m across, turned at random.
+     */
+    private static Geometry footprint(Random random, double x, double y) {
+        double w = 8 + random.nextDouble() * 22;
+        double h = 8 + random.nextDouble() * 22;
+        Coordinate[] ring;
+        if (random.nextBoolean()) {
+            ring = new Coordinate[] { new Coordinate(0, 0), new Coordinate(w, 0),
+                new Coordinate(w, h), new Coordinate(0, h), new Coordinate(0, 0) };
+        } else {
+            double cw = w * (0.3 + random.nextDouble() * 0.4);
+            double ch = h * (0.3 + random.nextDouble() * 0.4);
+            ring = new Coordinate[] { new Coordinate(0, 0), new Coordinate(w, 0),
+                new Coordinate(w, ch), new Coordinate(cw, ch), new Coordinate(cw, h),
+                new Coordinate(0, h), new Coordinate(0, 0) };
+        }
+        Geometry shape = FACTORY.createPolygon(FACTORY.createLinearRing(ring), null);
+        AffineTransformation t = AffineTransformation.rotationInstance(random.nextDouble() * 2 * Math.PI);
+        t.translate(x, y);
+        return t.transform(shape);
+    }
+
+    /**
+     * The footprint as another survey might have it.
+     */
+    private static Geometry jitter(Random random, Geometry footprint) {
+        Coordinate centre = footprint.getCentroid().getCoordinate();
+        double scale = 1 + (random.nextDouble() * 2 - 1) * 0.03;
+        AffineTransformation t = AffineTransformation.translationInstance(-centre.x, -centre.y);
+        t.scale(scale, scale);
+        t.rotate(Math.toRadians((random.nextDouble() * 2 - 1) * 3));
+        t.translate(centre.x + (random.nextDouble() * 2 - 1) * 1.5,
+            centre.y + (random.nextDouble() * 2 - 1) * 1.5);
+        return t.transform(footprint);
+    }
+}
@@ -0,0 +1,146 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import com.vividsolutions.jcs.algorithm.VertexHausdorffDistance;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.IndexedFeatureCollection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Checks the thread-safety contract of FeatureMatcher: scores the same
+ * datasets with a ParallelFCMatchFinder, several times and with several chunk
+ * sizes, and with the serial BasicFCMatchFinder, and fails unless every target
+ * gets the same candidates with bit-identical scores. Each matcher is checked
+ * on its own and in ChainMatchers, fused and not.
+ * <p>
+ * Usage: ParallelMatchCheck [targetCount [rounds [threadCount]]]; exits with
+ * status 1 if any result differs.
+ */
+public class ParallelMatchCheck {
+
+    public static void main(String[] args) {
+        int targetCount = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int threadCount = args.length > 2 ? Integer.parseInt(args[2])
+            : Math.max(4, Runtime.getRuntime().availableProcessors());
+
+        FeatureCollection targets = MatchFixtures.polygons(targetCount, 1);
+        FeatureCollection candidates =
+            new IndexedFeatureCollection(MatchFixtures.perturbed(targets, 2));
+
+        int failures = 0;
+        for (Iterator i = matchers().entrySet().iterator(); i.hasNext();) {
+            Map.Entry entry = (Map.Entry) i.next();
+            String name = (String) entry.getKey();
+            FeatureMatcher matcher = (FeatureMatcher) entry.getValue();
+            long start = System.currentTimeMillis();
+            Map serial = new BasicFCMatchFinder(matcher).match(
+                targets, candidates, MatchFixtures.SILENT_MONITOR);
+            long serialTime = System.currentTimeMillis() - start;
+            int pairs = 0;
+            for (Iterator j = serial.values().iterator(); j.hasNext();) {
+                pairs += ((Matches) j.next()).size();
+            }
+            String result = "ok";
+            long parallelTime = 0;
+            for (int round = 0; round < rounds; round++) {
+                ParallelFCMatchFinder finder = new ParallelFCMatchFinder(matcher, threadCount);
+                // from one target per chunk up, so that threads interleave finely
+                finder.setChunkSize(1 + round * 16);
+                start = System.currentTimeMillis();
+                Map parallel = finder.match(targets, candidates, MatchFixtures.SILENT_MONITOR);
+                parallelTime += System.currentTimeMillis() - start;
+                String difference = difference(targets, serial, parallel);
+                if (difference != null) {
+                    result = "FAILED in round " + (round + 1) + ": " + difference;
+                    failures++;
+                    break;
+                }
+            }
+            System.out.println(name + ": " + pairs + " scored pairs, serial " + serialTime
+                + " ms, parallel " + (parallelTime / Math.max(1, rounds)) + " ms per round; " + result);
+        }
+        if (failures > 0) {
+            System.out.println(failures + " matcher(s) gave different results in parallel");
+            System.exit(1);
+        }
+    }
+
+    private static Map matchers() {
+        Map matchers = new LinkedHashMap();
+
+        HausdorffDistanceMatcher hausdorff = new HausdorffDistanceMatcher();
+        hausdorff.setMaxDistance(50);
+        matchers.put("Hausdorff", hausdorff);
+        // VertexHausdorffDistance and EuclideanDistanceToPoint, once shared
+        // a static scratch segment
+        matchers.put("vertex Hausdorff", new ChainMatcher(new FeatureMatcher[] {
+            new WindowMatcher(50), new IndependentCandidateMatcher() {
+                public double match(Geometry target, Geometry candidate) {
+                    return 1 / (1 + new VertexHausdorffDistance(target, candidate).distance());
+                }
+            } }));
+        matchers.put("overlap", new OverlapMatcher());
+        OverlapMatcher gridOverlap = new OverlapMatcher();
+        gridOverlap.setGridResolution(32);
+        matchers.put("overlap on a grid", gridOverlap);
+        matchers.put("symmetric difference", new SymDiffMatcher());
+        CentroidDistanceMatcher centroid = new CentroidDistanceMatcher();
+        centroid.setMaxDistance(50);
+        matchers.put("centroid", centroid);
+        matchers.put("chain", chain(false));
+        matchers.put("fused chain", chain(true));
+        return matchers;
+    }
+
+    private static ChainMatcher chain(boolean fused) {
+        HausdorffDistanceMatcher hausdorff = new HausdorffDistanceMatcher();
+        hausdorff.setMaxDistance(50);
+        CentroidDistanceMatcher centroid = new CentroidDistanceMatcher();
+        centroid.setMaxDistance(50);
+        ChainMatcher chain = new ChainMatcher(new FeatureMatcher[] {
+            new WindowMatcher(50), hausdorff, new OverlapMatcher(), centroid,
+            new SymDiffMatcher(), new CompactnessMatcher(), new AngleHistogramMatcher(),
+            new TopScoreMatcher() });
+        chain.setFused(fused);
+        return chain;
+    }
+
+    /**
+     * @return a description of the first target whose matches differ, or
+     * null if they are all the same
+     */
+    private static String difference(FeatureCollection targets, Map expected, Map actual) {
+        if (expected.size() != actual.size()) {
+            return expected.size() + " targets matched serially but " + actual.size() + " in parallel";
+        }
+        for (Iterator i = targets.iterator(); i.hasNext();) {
+            Feature target = (Feature) i.next();
+            Matches e = (Matches) expected.get(target);
+            Matches a = (Matches) actual.get(target);
+            if (e == null || a == null) {
+                if (e != a) {
+                    return "target " + target.getID() + " matched only "
+                        + (e == null ? "in parallel" : "serially");
+                }
+                continue;
+            }
+            if (e.size() != a.size()) {
+                return "target " + target.getID() + " has " + e.size() + " matches serially but "
+                    + a.size() + " in parallel";
+            }
+            for (int j = 0; j < e.size(); j++) {
+                if (e.getFeature(j) != a.getFeature(j)
+                        || Double.doubleToLongBits(e.getScore(j)) != Double.doubleToLongBits(a.getScore(j))) {
+                    return "target " + target.getID() + " match " + j + ": candidate "
+                        + e.getFeature(j).getID() + " scored " + e.getScore(j) + " serially, candidate "
+                        + a.getFeature(j).getID() + " scored " + a.getScore(j) + " in parallel";
+                }
+            }
+        }
+        return null;
+    }
+}